@@ -0,0 +1,54 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.Random;
+
+/**
+ * Распределения обращений к ключам для бенчмарков
+ */
+public enum AccessPattern {
+
+    /**
+     * Все ключи равновероятны
+     */
+    UNIFORM,
+
+    /**
+     * Несколько горячих ключей и длинный хвост холодных (exponent = 1)
+     */
+    ZIPF,
+
+    /**
+     * Равновероятные ключи с одинаковым hashCode: все попадают в одну корзину HashMap
+     */
+    ADVERSARIAL;
+
+    /**
+     * Ключ с номером index
+     */
+    public Long key(int index) {
+        if (this == ADVERSARIAL) {
+            // Long.hashCode = (int) (value ^ (value >>> 32)) = 0 для таких чисел
+            return ((long) index << 32) | index;
+        }
+        return (long) index;
+    }
+
+    /**
+     * Последовательность номеров ключей длины length из keyCount ключей
+     */
+    public int[] indexes(int keyCount, int length, long seed) {
+        int[] result = new int[length];
+        if (this == ZIPF) {
+            ZipfSampler sampler = new ZipfSampler(keyCount, 1.0, seed);
+            for (int i = 0; i < length; i++) {
+                result[i] = sampler.next();
+            }
+        } else {
+            Random random = new Random(seed);
+            for (int i = 0; i < length; i++) {
+                result[i] = random.nextInt(keyCount);
+            }
+        }
+        return result;
+    }
+}
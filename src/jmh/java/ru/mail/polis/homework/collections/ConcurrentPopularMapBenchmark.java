@@ -0,0 +1,96 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Бенчмарки {@link ConcurrentPopularMap}, общей для всех потоков. Масштабирование смотрим,
+ * запуская с разным количеством потоков:
+ *
+ * ./gradlew jmh -PjmhArgs='ConcurrentPopularMapBenchmark -t 1'
+ * ./gradlew jmh -PjmhArgs='ConcurrentPopularMapBenchmark -t 8'
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentPopularMapBenchmark {
+
+    private static final int OPERATIONS = 1 << 20;
+
+    @State(Scope.Benchmark)
+    public static class SharedMap {
+
+        @Param({"1000", "100000", "1000000"})
+        public int size;
+
+        @Param({"UNIFORM", "ZIPF", "ADVERSARIAL"})
+        public AccessPattern pattern;
+
+        private ConcurrentPopularMap<Long, Long> map;
+        private Long[] keys;
+
+        @Setup
+        public void setUp() {
+            keys = new Long[size];
+            map = new ConcurrentPopularMap<>(size);
+            for (int i = 0; i < size; i++) {
+                keys[i] = pattern.key(i);
+                map.put(keys[i], keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Своя последовательность обращений у каждого потока
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int[] order;
+        private int position;
+
+        @Setup
+        public void setUp(SharedMap shared) {
+            order = shared.pattern.indexes(shared.size, OPERATIONS, Thread.currentThread().getId());
+        }
+
+        Long next(SharedMap shared) {
+            int index = order[position];
+            position = (position + 1) & (OPERATIONS - 1);
+            return shared.keys[index];
+        }
+    }
+
+    @Benchmark
+    public Long get(SharedMap shared, Cursor cursor) {
+        return shared.map.get(cursor.next(shared));
+    }
+
+    @Benchmark
+    public Long put(SharedMap shared, Cursor cursor) {
+        Long key = cursor.next(shared);
+        return shared.map.put(key, key);
+    }
+
+    @Benchmark
+    public boolean containsKey(SharedMap shared, Cursor cursor) {
+        return shared.map.containsKey(cursor.next(shared));
+    }
+
+    @Benchmark
+    public Long getPopularKey(SharedMap shared) {
+        return shared.map.getPopularKey();
+    }
+}
@@ -0,0 +1,120 @@
+package ru.mail.polis.homework.collections;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Бенчмарки {@link PopularMap}. Мапа не потокобезопасная, поэтому у каждого потока своя копия
+ * (Scope.Thread): запуск с -t N показывает, как операции масштабируются без общего состояния.
+ * Для общей мапы между потоками см. {@link ConcurrentPopularMapBenchmark}.
+ *
+ * ./gradlew jmh -PjmhArgs='PopularMapBenchmark -t 1'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PopularMapBenchmark {
+
+    private static final int OPERATIONS = 1 << 20;
+    private static final int ITERATED_VALUES = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"UNIFORM", "ZIPF", "ADVERSARIAL"})
+    public AccessPattern pattern;
+
+    /**
+     * Способ подсчета популярности: точный индекс, затухание, приближенный (Count-Min Sketch + Space-Saving)
+     */
+    @Param({"EXACT", "DECAY", "APPROXIMATE"})
+    public String counting;
+
+    private PopularMap<Long, Long> map;
+    private Long[] keys;
+    private int[] order;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        keys = new Long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = pattern.key(i);
+        }
+        order = pattern.indexes(size, OPERATIONS, 42);
+        map = createMap();
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], keys[i]);
+        }
+        // Прогреваем счетчики тем же распределением, чтобы в индексе были разные популярности
+        for (int index : order) {
+            map.get(keys[index]);
+        }
+    }
+
+    private PopularMap<Long, Long> createMap() {
+        switch (counting) {
+            case "DECAY":
+                return PopularMap.withDecay(Duration.ofMinutes(1));
+            case "APPROXIMATE":
+                return PopularMap.approximate(0.001, 0.01, 1000);
+            default:
+                return new PopularMap<>();
+        }
+    }
+
+    private Long nextKey() {
+        int index = order[position];
+        position = (position + 1) & (OPERATIONS - 1);
+        return keys[index];
+    }
+
+    @Benchmark
+    public Long get() {
+        return map.get(nextKey());
+    }
+
+    @Benchmark
+    public Long put() {
+        Long key = nextKey();
+        return map.put(key, key);
+    }
+
+    @Benchmark
+    public boolean containsKey() {
+        return map.containsKey(nextKey());
+    }
+
+    @Benchmark
+    public Long getPopularKey() {
+        return map.getPopularKey();
+    }
+
+    /**
+     * Первые ITERATED_VALUES самых непопулярных значений
+     */
+    @Benchmark
+    public void popularIterator(Blackhole blackhole) {
+        Iterator<Long> iterator = map.popularIterator();
+        for (int i = 0; i < ITERATED_VALUES && iterator.hasNext(); i++) {
+            blackhole.consume(iterator.next());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Генератор чисел 0..n-1 с распределением Ципфа: вероятность числа i пропорциональна 1 / (i + 1)^exponent.
+ * Распределение строится один раз (таблица накопленных вероятностей), каждое следующее число - бинарный поиск.
+ */
+public class ZipfSampler {
+
+    private final double[] cumulative;
+    private final Random random;
+
+    public ZipfSampler(int n, double exponent, long seed) {
+        this.cumulative = new double[n];
+        this.random = new Random(seed);
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    public int next() {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,120 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import ru.mail.polis.homework.collections.ZipfSampler;
+
+/**
+ * Генератор синтетического потока писем и зарплат. Отправители и получатели выбираются по распределению Ципфа:
+ * несколько очень активных адресов и длинный хвост редких, как в настоящей почте. Тексты писем собираются
+ * из небольшого словаря, тоже по Ципфу. При одинаковом seed поток всегда одинаковый.
+ *
+ * Как нагрузочный тест запускается через main: письма идут в {@link MailService} через {@link MailPipeline},
+ * в конце печатаются метрики конвейера.
+ */
+public class MailGenerator implements Iterator<Mail<?>> {
+
+    private static final String[] WORDS = {
+            "hello", "meeting", "report", "lunch", "deadline", "salary", "bonus", "project", "review", "release",
+            "budget", "vacation", "invoice", "contract", "schedule", "update", "urgent", "question", "thanks", "team"
+    };
+    private static final int WORDS_PER_MESSAGE = 8;
+
+    private final String[] senders;
+    private final String[] recipients;
+    private final ZipfSampler senderSampler;
+    private final ZipfSampler recipientSampler;
+    private final ZipfSampler wordSampler;
+    private final double salaryShare;
+    private final Random random;
+
+    /**
+     * @param senders     - количество разных отправителей
+     * @param recipients  - количество разных получателей
+     * @param exponent    - показатель распределения Ципфа (0 - равномерное)
+     * @param salaryShare - доля зарплат в потоке, от 0 до 1
+     */
+    public MailGenerator(int senders, int recipients, double exponent, double salaryShare, long seed) {
+        this.senders = names("sender", senders);
+        this.recipients = names("user", recipients);
+        this.senderSampler = new ZipfSampler(senders, exponent, seed);
+        this.recipientSampler = new ZipfSampler(recipients, exponent, seed + 1);
+        this.wordSampler = new ZipfSampler(WORDS.length, 1, seed + 2);
+        this.salaryShare = salaryShare;
+        this.random = new Random(seed + 3);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return true;
+    }
+
+    @Override
+    public Mail<?> next() {
+        String sender = senders[senderSampler.next()];
+        String recipient = recipients[recipientSampler.next()];
+        if (random.nextDouble() < salaryShare) {
+            return new Salary(recipient, sender, 1000 + random.nextInt(100_000));
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < WORDS_PER_MESSAGE; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[wordSampler.next()]);
+        }
+        return new MailMessage(recipient, sender, text.toString());
+    }
+
+    /**
+     * Следующие count писем
+     */
+    public List<Mail<?>> generate(int count) {
+        List<Mail<?>> mails = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            mails.add(next());
+        }
+        return mails;
+    }
+
+    private static String[] names(String prefix, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = prefix + i;
+        }
+        return names;
+    }
+
+    /**
+     * Нагрузочный тест: java MailGenerator [писем] [потоков] [HEAP|OFF_HEAP]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int consumers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        StorageKind storage = args.length > 2 ? StorageKind.valueOf(args[2]) : StorageKind.HEAP;
+
+        MailService<Mail<?>> service = storage.createService();
+        MailGenerator generator = new MailGenerator(10_000, 100_000, 1, 0.2, 42);
+        Iterator<Mail<?>> mails = new Iterator<Mail<?>>() {
+            private int left = count;
+
+            @Override
+            public boolean hasNext() {
+                return left > 0;
+            }
+
+            @Override
+            public Mail<?> next() {
+                left--;
+                return generator.next();
+            }
+        };
+        MailPipeline.Metrics metrics = MailService.process(service, mails, 1024, 64, consumers);
+        System.out.println(storage + ", consumers=" + consumers + ": " + metrics);
+        System.out.println("popular sender: " + service.getPopularSender()
+                + ", popular recipient: " + service.getPopularRecipient());
+    }
+}
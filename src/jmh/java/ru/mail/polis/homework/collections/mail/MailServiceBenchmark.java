@@ -0,0 +1,153 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Бенчмарки {@link MailService} на потоке из {@link MailGenerator}. accept, getMailBox и getPopularSender
+ * работают в режиме SampleTime, поэтому в отчете есть перцентили задержки одного вызова (p0.50, p0.99, p0.999),
+ * а профайлер gc из задачи jmh показывает аллокации на операцию (gc.alloc.rate.norm).
+ * process измеряет время обработки целой пачки писем, поэтому для него режим AverageTime: одна операция - одно
+ * письмо, в отчете среднее время на письмо. Перцентили тут бессмысленны: JMH делит время каждой пачки
+ * на ее размер, и они описывали бы средние по пачкам, а не задержку отдельных писем.
+ *
+ * accept, getMailBox и getPopularSender работают с одним сервисом на все потоки, масштабирование смотрим
+ * через -t, process распределяет пачку писем по пулу из threads потоков:
+ *
+ * ./gradlew jmh -PjmhArgs='MailServiceBenchmark.accept -t 1'
+ * ./gradlew jmh -PjmhArgs='MailServiceBenchmark.accept -t 8'
+ * ./gradlew jmh -PjmhArgs='MailServiceBenchmark.process -p threads=1,2,4,8'
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MailServiceBenchmark {
+
+    private static final int MAILS = 1 << 16;
+    private static final int PREFILLED = 200_000;
+    private static final int BATCH = 10_000;
+
+    /**
+     * Сервис, в который пишут все потоки. Пересоздается на каждой итерации, чтобы хранилище не росло бесконечно.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedService {
+
+        @Param({"HEAP", "OFF_HEAP"})
+        public StorageKind storage;
+
+        /**
+         * Показатель распределения Ципфа для отправителей и получателей
+         */
+        @Param({"1.0"})
+        public double exponent;
+
+        private MailService<Mail<?>> service;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            service = storage.createService();
+        }
+    }
+
+    /**
+     * Заранее заполненный сервис для запросов
+     */
+    @State(Scope.Benchmark)
+    public static class FilledService {
+
+        @Param({"HEAP", "OFF_HEAP"})
+        public StorageKind storage;
+
+        private MailService<Mail<?>> service;
+
+        @Setup
+        public void setUp() {
+            service = storage.createService();
+            MailService.process(service, new MailGenerator(10_000, 100_000, 1, 0.2, 42).generate(PREFILLED));
+        }
+    }
+
+    /**
+     * Свой поток писем у каждого потока бенчмарка
+     */
+    @State(Scope.Thread)
+    public static class Mails {
+        private Mail<?>[] mails;
+        private int position;
+
+        @Setup
+        public void setUp(SharedService shared) {
+            mails = new MailGenerator(10_000, 100_000, shared.exponent, 0.2, Thread.currentThread().getId())
+                    .generate(MAILS).toArray(new Mail<?>[0]);
+        }
+
+        Mail<?> next() {
+            Mail<?> mail = mails[position];
+            position = (position + 1) & (MAILS - 1);
+            return mail;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Batch {
+
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        private ForkJoinPool pool;
+        private List<Mail<?>> mails;
+
+        @Setup
+        public void setUp() {
+            pool = new ForkJoinPool(threads);
+            mails = new MailGenerator(10_000, 100_000, 1, 0.2, 7).generate(BATCH);
+        }
+
+        @TearDown
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void accept(SharedService shared, Mails mails) {
+        shared.service.accept(mails.next());
+    }
+
+    @Benchmark
+    public Map<String, List<Mail<?>>> getMailBox(FilledService filled) {
+        return filled.service.getMailBox();
+    }
+
+    @Benchmark
+    public String getPopularSender(FilledService filled) {
+        return filled.service.getPopularSender();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OperationsPerInvocation(BATCH)
+    public void process(SharedService shared, Batch batch) {
+        MailService.process(shared.service, batch.mails, batch.pool);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.mail.polis.homework.collections.mail;
+
+/**
+ * Хранилища писем, которые сравниваем в бенчмарках
+ */
+public enum StorageKind {
+
+    HEAP,
+
+    OFF_HEAP;
+
+    public MailService<Mail<?>> createService() {
+        if (this == OFF_HEAP) {
+            return new MailService<>(new OffHeapMailBoxStorage<>());
+        }
+        return new MailService<>(new HeapMailBoxStorage<>());
+    }
+}
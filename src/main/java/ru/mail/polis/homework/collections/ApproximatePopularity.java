@@ -0,0 +1,59 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.Iterator;
+
+/**
+ * Приближенная популярность в фиксированной памяти: частоты оцениваются {@link CountMinSketch},
+ * самые популярные элементы отслеживает {@link SpaceSaving}.
+ *
+ * Память не зависит от количества различных элементов: width * depth счетчиков скетча плюс topK счетчиков.
+ * get(element) никогда не занижает популярность и завышает ее не больше чем на epsilon * N
+ * с вероятностью 1 - delta. getMostPopular() и ascendingIterator() работают только по topK отслеживаемым
+ * элементам.
+ *
+ * @param <T> - тип элемента
+ */
+class ApproximatePopularity<T> implements Popularity<T> {
+
+    private final CountMinSketch<T> sketch;
+    private final SpaceSaving<T> heavyHitters;
+
+    ApproximatePopularity(double epsilon, double delta, int topK) {
+        this.sketch = new CountMinSketch<>(epsilon, delta);
+        this.heavyHitters = new SpaceSaving<>(topK);
+    }
+
+    @Override
+    public void increment(T element) {
+        add(element, 1);
+    }
+
+    @Override
+    public void add(T element, int delta) {
+        sketch.add(element, delta);
+        heavyHitters.offer(element, delta);
+    }
+
+    @Override
+    public int get(Object element) {
+        return sketch.estimate(element);
+    }
+
+    @Override
+    public T getMostPopular() {
+        return heavyHitters.getMostFrequent();
+    }
+
+    /**
+     * Количество отслеживаемых самых популярных элементов (не больше topK)
+     */
+    @Override
+    public int size() {
+        return heavyHitters.size();
+    }
+
+    @Override
+    public Iterator<T> ascendingIterator() {
+        return heavyHitters.ascendingIterator();
+    }
+}
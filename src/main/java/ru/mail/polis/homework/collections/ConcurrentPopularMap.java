@@ -0,0 +1,155 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Потокобезопасный вариант {@link PopularMap} без глобальной блокировки.
+ *
+ * Данные хранятся в {@link ConcurrentHashMap}, популярность ключей и значений считается в
+ * {@link ConcurrentPopularity}. Методы getPopularKey/getPopularValue работают за O(1), но при параллельных
+ * обновлениях могут вернуть не самый свежий результат (лидер догоняет реальные счетчики после следующего
+ * обращения к ним). Когда обращения к мапе прекращаются, результат становится точным.
+ *
+ * Представления keySet/values/entrySet отдаются напрямую из {@link ConcurrentHashMap} и популярность не меняют.
+ *
+ * @param <K> - тип ключа
+ * @param <V> - тип значения
+ */
+public class ConcurrentPopularMap<K, V> implements Map<K, V> {
+
+    private final ConcurrentHashMap<K, V> map;
+    private final ConcurrentPopularity<K> keyPopularity = new ConcurrentPopularity<>();
+    private final ConcurrentPopularity<V> valuePopularity = new ConcurrentPopularity<>();
+
+    public ConcurrentPopularMap() {
+        this.map = new ConcurrentHashMap<>();
+    }
+
+    public ConcurrentPopularMap(int initialCapacity) {
+        this.map = new ConcurrentHashMap<>(initialCapacity);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        touchKey(key);
+        return map.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        touchValue(value);
+        return map.containsValue(value);
+    }
+
+    @Override
+    public V get(Object key) {
+        V value = map.get(key);
+        touchKey(key);
+        touchValue(value);
+        return value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        V oldValue = map.put(key, value);
+        keyPopularity.increment(key);
+        valuePopularity.increment(value);
+        touchValue(oldValue);
+        return oldValue;
+    }
+
+    @Override
+    public V remove(Object key) {
+        V oldValue = map.remove(key);
+        touchKey(key);
+        touchValue(oldValue);
+        return oldValue;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return map.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return map.values();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return map.entrySet();
+    }
+
+    /**
+     * Возвращает самый популярный ключ (с точностью до параллельных обновлений)
+     */
+    public K getPopularKey() {
+        return keyPopularity.getMostPopular();
+    }
+
+    public int getKeyPopularity(K key) {
+        return saturate(keyPopularity.get(key));
+    }
+
+    /**
+     * Возвращает самое популярное значение (с точностью до параллельных обновлений)
+     */
+    public V getPopularValue() {
+        return valuePopularity.getMostPopular();
+    }
+
+    public int getValuePopularity(V value) {
+        return saturate(valuePopularity.get(value));
+    }
+
+    /**
+     * Итератор по снимку значений от самых НЕ популярных к самым популярным.
+     * Снимок делается при создании итератора, последующие обращения к мапе на него не влияют.
+     */
+    public Iterator<V> popularIterator() {
+        return valuePopularity.snapshotAscending().iterator();
+    }
+
+    private static int saturate(long count) {
+        return count > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void touchKey(Object key) {
+        keyPopularity.increment((K) key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void touchValue(Object value) {
+        if (value != null) {
+            valuePopularity.increment((V) value);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Потокобезопасные счетчики популярности для {@link ConcurrentPopularMap}, их же использует почтовый сервис
+ * для счетчиков отправителей и получателей.
+ *
+ * Каждый счетчик - это {@link LongAdder}, поэтому одновременные обращения к одному и тому же элементу
+ * не конкурируют за одну ячейку памяти.
+ *
+ * Лидеров несколько: у каждой полосы (потоки распределены по полосам) свой лидер, а самый популярный элемент -
+ * это лидер полосы с наибольшим текущим счетчиком. Лидер хранит ссылку на счетчик, а не значение, поэтому
+ * если увеличивается элемент, который уже лидирует в своей полосе, ничего не пересчитывается и не
+ * записывается. Иначе счетчик элемента сравнивается со счетчиком лидера полосы и лидер меняется через CAS
+ * в ячейке этой полосы, так что горячий ключ не создает общей точки конкуренции. Пока идут параллельные
+ * обновления, лидер может немного отставать; после их окончания он точный: последний инкремент самого
+ * популярного элемента либо сделал его лидером своей полосы, либо там уже был элемент с не меньшим счетчиком.
+ *
+ * @param <T> - тип элемента
+ */
+public class ConcurrentPopularity<T> {
+
+    private static final int STRIPES =
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+
+    private final ConcurrentHashMap<T, LongAdder> counters = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Leader<T>> leaders = new AtomicReferenceArray<>(STRIPES);
+
+    public void increment(T element) {
+        LongAdder counter = counters.get(element);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(element, e -> new LongAdder());
+        }
+        counter.increment();
+        offer(element, counter);
+    }
+
+    public long get(Object element) {
+        LongAdder counter = counters.get(element);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * O(количество полос): сравниваются текущие счетчики лидеров полос
+     */
+    public T getMostPopular() {
+        Leader<T> best = null;
+        long bestCount = -1;
+        for (int i = 0; i < STRIPES; i++) {
+            Leader<T> current = leaders.get(i);
+            if (current != null) {
+                long count = current.counter.sum();
+                if (count > bestCount) {
+                    best = current;
+                    bestCount = count;
+                }
+            }
+        }
+        return best == null ? null : best.element;
+    }
+
+    /**
+     * Снимок всех счетчиков
+     */
+    public Map<T, Long> snapshot() {
+        Map<T, Long> result = new HashMap<>();
+        counters.forEach((element, counter) -> result.put(element, counter.sum()));
+        return result;
+    }
+
+    /**
+     * Снимок элементов, отсортированный по возрастанию популярности
+     */
+    public List<T> snapshotAscending() {
+        List<Map.Entry<T, Long>> snapshot = new ArrayList<>(counters.size());
+        counters.forEach((element, counter) ->
+                snapshot.add(new AbstractMap.SimpleImmutableEntry<>(element, counter.sum())));
+        snapshot.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+        List<T> result = new ArrayList<>(snapshot.size());
+        for (Map.Entry<T, Long> entry : snapshot) {
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    private void offer(T element, LongAdder counter) {
+        int stripe = stripe();
+        Leader<T> current = leaders.get(stripe);
+        if (current != null && current.counter == counter) {
+            return;
+        }
+        long count = counter.sum();
+        while (current == null || count > current.counter.sum()) {
+            if (leaders.compareAndSet(stripe, current, new Leader<>(element, counter))) {
+                return;
+            }
+            current = leaders.get(stripe);
+            if (current.counter == counter) {
+                return;
+            }
+        }
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static class Leader<T> {
+        private final T element;
+        private final LongAdder counter;
+
+        Leader(T element, LongAdder counter) {
+            this.element = element;
+            this.counter = counter;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.mail.polis.homework.collections;
+
+/**
+ * Count-Min Sketch (Cormode, Muthukrishnan): оценка частот элементов в фиксированной памяти.
+ *
+ * Таблица depth x width счетчиков, каждая строка со своей хеш-функцией. Оценка частоты - минимум по строкам,
+ * она никогда не бывает меньше реальной частоты, и с вероятностью не меньше 1 - delta превышает ее
+ * не больше чем на epsilon * N, где N - общее количество учтенных элементов.
+ * width = ceil(e / epsilon), depth = ceil(ln(1 / delta)).
+ *
+ * @param <T> - тип элемента
+ */
+class CountMinSketch<T> {
+
+    private final int[][] table;
+
+    /**
+     * Зерно хеш-функции каждой строки, выводится из номера строки, поэтому строк может быть сколько угодно
+     */
+    private final long[] seeds;
+    private final int width;
+
+    CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || epsilon >= 1) {
+            throw new IllegalArgumentException("epsilon must be in (0, 1): " + epsilon);
+        }
+        if (delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("delta must be in (0, 1): " + delta);
+        }
+        int depth = Math.max(1, (int) Math.ceil(Math.log(1 / delta)));
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.table = new int[depth][width];
+        this.seeds = new long[depth];
+        for (int row = 0; row < depth; row++) {
+            seeds[row] = splitMix(row);
+        }
+    }
+
+    int depth() {
+        return table.length;
+    }
+
+    public void add(T element, int count) {
+        int hash = element.hashCode();
+        for (int row = 0; row < table.length; row++) {
+            int column = column(hash, row);
+            table[row][column] = (int) Math.min(Integer.MAX_VALUE, (long) table[row][column] + count);
+        }
+    }
+
+    public int estimate(Object element) {
+        int hash = element.hashCode();
+        int result = Integer.MAX_VALUE;
+        for (int row = 0; row < table.length; row++) {
+            result = Math.min(result, table[row][column(hash, row)]);
+        }
+        return result;
+    }
+
+    private int column(int hash, int row) {
+        long h = (hash ^ seeds[row]) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        return (int) ((h & Long.MAX_VALUE) % width);
+    }
+
+    /**
+     * i-е значение генератора SplitMix64: разные i дают независимые на вид 64-битные зерна
+     */
+    private static long splitMix(long i) {
+        long z = (i + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,123 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Популярность с экспоненциальным затуханием: каждое использование элемента через halfLife весит вдвое меньше.
+ *
+ * Чтобы не пересчитывать все счетчики при каждом шаге времени, используется "прямое" затухание: вес
+ * использования в момент t равен exp(lambda * (t - landmark)), то есть новые использования весят больше старых,
+ * а все накопленные веса масштабируются одинаково. Поэтому порядок элементов со временем не меняется,
+ * самый популярный элемент обновляется за O(1) при инкременте, а текущая популярность получается умножением
+ * на exp(-lambda * (now - landmark)).
+ *
+ * Когда показатель экспоненты становится слишком большим (примерно раз в 700 периодов полураспада),
+ * все веса один раз умножаются на общий множитель и landmark переносится на текущий момент.
+ *
+ * @param <T> - тип элемента
+ */
+class DecayingPopularity<T> implements Popularity<T> {
+
+    /**
+     * Максимальный показатель экспоненты до переноса landmark (exp(709) - предел double)
+     */
+    private static final double MAX_EXPONENT = 500;
+
+    private final Map<T, Score> scores = new HashMap<>();
+    private final LongSupplier nanoClock;
+    private final double lambda;
+
+    private long landmark;
+    private T mostPopular;
+    private double mostPopularScore;
+
+    DecayingPopularity(long halfLifeNanos, LongSupplier nanoClock) {
+        if (halfLifeNanos <= 0) {
+            throw new IllegalArgumentException("Half-life must be positive: " + halfLifeNanos);
+        }
+        this.nanoClock = nanoClock;
+        this.lambda = Math.log(2) / halfLifeNanos;
+        this.landmark = nanoClock.getAsLong();
+    }
+
+    @Override
+    public void increment(T element) {
+        add(element, 1);
+    }
+
+    @Override
+    public void add(T element, int delta) {
+        long now = nanoClock.getAsLong();
+        double exponent = lambda * (now - landmark);
+        if (exponent > MAX_EXPONENT) {
+            rebase(now, exponent);
+            exponent = 0;
+        }
+        Score score = scores.get(element);
+        if (score == null) {
+            score = new Score();
+            scores.put(element, score);
+        }
+        score.value += delta * Math.exp(exponent);
+        if (score.value > mostPopularScore) {
+            mostPopular = element;
+            mostPopularScore = score.value;
+        }
+    }
+
+    /**
+     * Возвращает текущую (затухшую) популярность, округленную до целого
+     */
+    @Override
+    public int get(Object element) {
+        Score score = scores.get(element);
+        return score == null ? 0 : (int) Math.round(score.value * decayFactor());
+    }
+
+    @Override
+    public T getMostPopular() {
+        return mostPopular;
+    }
+
+    @Override
+    public int size() {
+        return scores.size();
+    }
+
+    /**
+     * В отличие от точного индекса, здесь приходится сортировать снимок: O(n log n) при создании итератора
+     */
+    @Override
+    public Iterator<T> ascendingIterator() {
+        List<Map.Entry<T, Score>> snapshot = new ArrayList<>(scores.entrySet());
+        snapshot.sort(Comparator.comparingDouble(entry -> entry.getValue().value));
+        List<T> result = new ArrayList<>(snapshot.size());
+        for (Map.Entry<T, Score> entry : snapshot) {
+            result.add(entry.getKey());
+        }
+        return result.iterator();
+    }
+
+    private double decayFactor() {
+        return Math.exp(-lambda * (nanoClock.getAsLong() - landmark));
+    }
+
+    private void rebase(long now, double exponent) {
+        double factor = Math.exp(-exponent);
+        for (Score score : scores.values()) {
+            score.value *= factor;
+        }
+        mostPopularScore *= factor;
+        landmark = now;
+    }
+
+    private static class Score {
+        private double value;
+    }
+}
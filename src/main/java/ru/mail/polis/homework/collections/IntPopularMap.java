@@ -0,0 +1,82 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Аналог {@link PopularMap} для ключей типа int. Устройство таблицы описано в {@link PrimitivePopularMap}.
+ *
+ * @param <V> - тип значения
+ */
+public class IntPopularMap<V> extends PrimitivePopularMap<V> {
+
+    private int[] keys;
+
+    public IntPopularMap() {
+        this(0);
+    }
+
+    /**
+     * @param expectedKeys - ожидаемое количество различных ключей, которые будут класть в мапу
+     */
+    public IntPopularMap(int expectedKeys) {
+        this(expectedKeys, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param expectedKeys  - ожидаемое количество различных ключей, которые будут класть в мапу
+     * @param maxMissedKeys - сколько максимум отсутствующих в мапе ключей считать при промахах
+     */
+    public IntPopularMap(int expectedKeys, int maxMissedKeys) {
+        super(expectedKeys, maxMissedKeys);
+    }
+
+    public boolean containsKey(int key) {
+        return containsKeyInternal(key);
+    }
+
+    public V get(int key) {
+        return getInternal(key);
+    }
+
+    public V put(int key, V value) {
+        return putInternal(key, value);
+    }
+
+    public V remove(int key) {
+        return removeInternal(key);
+    }
+
+    /**
+     * Возвращает самый популярный, на данный момент, ключ
+     *
+     * @throws NoSuchElementException если ни один ключ еще не использовался
+     */
+    public int getPopularKey() {
+        return (int) popularKey();
+    }
+
+    public int getKeyPopularity(int key) {
+        return keyPopularity(key);
+    }
+
+    @Override
+    void allocateKeys(int capacity) {
+        keys = new int[capacity];
+    }
+
+    @Override
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    void setKey(int slot, long key) {
+        keys[slot] = (int) key;
+    }
+
+    @Override
+    int hash(long key) {
+        int h = (int) key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
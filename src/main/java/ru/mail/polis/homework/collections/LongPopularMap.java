@@ -0,0 +1,82 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Аналог {@link PopularMap} для ключей типа long. Устройство таблицы описано в {@link PrimitivePopularMap}.
+ *
+ * @param <V> - тип значения
+ */
+public class LongPopularMap<V> extends PrimitivePopularMap<V> {
+
+    private long[] keys;
+
+    public LongPopularMap() {
+        this(0);
+    }
+
+    /**
+     * @param expectedKeys - ожидаемое количество различных ключей, которые будут класть в мапу
+     */
+    public LongPopularMap(int expectedKeys) {
+        this(expectedKeys, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param expectedKeys  - ожидаемое количество различных ключей, которые будут класть в мапу
+     * @param maxMissedKeys - сколько максимум отсутствующих в мапе ключей считать при промахах
+     */
+    public LongPopularMap(int expectedKeys, int maxMissedKeys) {
+        super(expectedKeys, maxMissedKeys);
+    }
+
+    public boolean containsKey(long key) {
+        return containsKeyInternal(key);
+    }
+
+    public V get(long key) {
+        return getInternal(key);
+    }
+
+    public V put(long key, V value) {
+        return putInternal(key, value);
+    }
+
+    public V remove(long key) {
+        return removeInternal(key);
+    }
+
+    /**
+     * Возвращает самый популярный, на данный момент, ключ
+     *
+     * @throws NoSuchElementException если ни один ключ еще не использовался
+     */
+    public long getPopularKey() {
+        return popularKey();
+    }
+
+    public int getKeyPopularity(long key) {
+        return keyPopularity(key);
+    }
+
+    @Override
+    void allocateKeys(int capacity) {
+        keys = new long[capacity];
+    }
+
+    @Override
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    void setKey(int slot, long key) {
+        keys[slot] = key;
+    }
+
+    @Override
+    int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,11 +1,17 @@
 package ru.mail.polis.homework.collections;
 
 
+import java.time.Duration;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 
 
 /**
@@ -34,73 +40,178 @@ import java.util.Set;
 public class PopularMap<K, V> implements Map<K, V> {
 
     private final Map<K, V> map;
+    private final Popularity<K> keyPopularity;
+    private final Popularity<V> valuePopularity;
+
+    /**
+     * Представления создаются один раз, при первом обращении (как в {@link HashMap})
+     */
+    private Set<K> keySet;
+    private Collection<V> values;
+    private Set<Entry<K, V>> entrySet;
 
     public PopularMap() {
-        this.map = new HashMap<>();
+        this(new HashMap<>());
     }
 
     public PopularMap(Map<K, V> map) {
+        this(map, new PopularityIndex<>(), new PopularityIndex<>());
+    }
+
+    PopularMap(Map<K, V> map, Popularity<K> keyPopularity, Popularity<V> valuePopularity) {
         this.map = map;
+        this.keyPopularity = keyPopularity;
+        this.valuePopularity = valuePopularity;
+    }
+
+    /**
+     * Мапа, в которой популярность затухает со временем: использование, случившееся halfLife назад,
+     * весит вдвое меньше нового. getKeyPopularity/getValuePopularity возвращают округленную текущую популярность,
+     * а getPopularKey/getPopularValue - самые популярные элементы "на сейчас". Полного пересчета счетчиков
+     * по таймеру нет (см. {@link DecayingPopularity}).
+     */
+    public static <K, V> PopularMap<K, V> withDecay(Duration halfLife) {
+        return withDecay(new HashMap<>(), halfLife, System::nanoTime);
+    }
+
+    static <K, V> PopularMap<K, V> withDecay(Map<K, V> map, Duration halfLife, LongSupplier nanoClock) {
+        long halfLifeNanos = halfLife.toNanos();
+        return new PopularMap<>(map, new DecayingPopularity<>(halfLifeNanos, nanoClock),
+                new DecayingPopularity<>(halfLifeNanos, nanoClock));
+    }
+
+    /**
+     * Мапа с приближенной популярностью в фиксированной памяти (см. {@link ApproximatePopularity}).
+     * getKeyPopularity/getValuePopularity не занижают популярность и с вероятностью 1 - delta завышают ее
+     * не больше чем на epsilon * (общее количество использований), самые популярные ключ и значение ищутся
+     * среди topK отслеживаемых, а popularIterator обходит только их.
+     */
+    public static <K, V> PopularMap<K, V> approximate(double epsilon, double delta, int topK) {
+        return new PopularMap<>(new HashMap<>(), new ApproximatePopularity<>(epsilon, delta, topK),
+                new ApproximatePopularity<>(epsilon, delta, topK));
     }
 
     @Override
     public int size() {
-        return 0;
+        return map.size();
     }
 
     @Override
     public boolean isEmpty() {
-        return false;
+        return map.isEmpty();
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return false;
+        touchKey(key);
+        return map.containsKey(key);
     }
 
     @Override
     public boolean containsValue(Object value) {
-        return false;
+        touchValue(value);
+        return map.containsValue(value);
     }
 
     @Override
     public V get(Object key) {
-        return null;
+        V value = map.get(key);
+        touchKey(key);
+        touchValue(value);
+        return value;
     }
 
     @Override
     public V put(K key, V value) {
-        return null;
+        V oldValue = map.put(key, value);
+        keyPopularity.increment(key);
+        valuePopularity.increment(value);
+        touchValue(oldValue);
+        return oldValue;
     }
 
     @Override
     public V remove(Object key) {
-        return null;
+        V oldValue = map.remove(key);
+        touchKey(key);
+        touchValue(oldValue);
+        return oldValue;
     }
 
+    /**
+     * Счетчики популярности получаются такими же, как при вызове put для каждой пары, но индекс обновляется
+     * один раз на каждый различный ключ/значение пачки (с суммарным приращением), а не на каждую пару.
+     * Приращения применяются в порядке обхода m (значение - по первому появлению). Порядок среди элементов
+     * с равной популярностью (getPopularKey/getPopularValue, popularIterator) при этом может отличаться от
+     * поэлементных put: элемент получает все свои приращения сразу, а не вперемешку с другими.
+     */
     @Override
     public void putAll(Map<? extends K, ? extends V> m) {
-        throw new UnsupportedOperationException("putAll");
+        Map<V, Integer> valueDeltas = new LinkedHashMap<>();
+        for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            valueDeltas.merge(entry.getValue(), 1, Integer::sum);
+            V oldValue = map.get(entry.getKey());
+            if (oldValue != null) {
+                valueDeltas.merge(oldValue, 1, Integer::sum);
+            }
+        }
+        map.putAll(m);
+        for (K key : m.keySet()) {
+            keyPopularity.increment(key);
+        }
+        valueDeltas.forEach(valuePopularity::add);
+    }
+
+    /**
+     * Пакетный get: возвращает мапу найденных ключей и их значений.
+     * Счетчики популярности получаются такими же, как при вызове get для каждого ключа (повторы тоже
+     * учитываются), но индекс обновляется один раз на каждый различный ключ/значение, в порядке первого
+     * появления в keys. Порядок среди равных по популярности может отличаться, как в {@link #putAll(Map)}.
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> result = new HashMap<>();
+        Map<K, Integer> keyDeltas = new LinkedHashMap<>();
+        Map<V, Integer> valueDeltas = new LinkedHashMap<>();
+        for (K key : keys) {
+            keyDeltas.merge(key, 1, Integer::sum);
+            V value = map.get(key);
+            if (value != null) {
+                valueDeltas.merge(value, 1, Integer::sum);
+                result.put(key, value);
+            }
+        }
+        keyDeltas.forEach(keyPopularity::add);
+        valueDeltas.forEach(valuePopularity::add);
+        return result;
     }
 
     @Override
     public void clear() {
-
+        map.clear();
     }
 
     @Override
     public Set<K> keySet() {
-        return null;
+        if (keySet == null) {
+            keySet = new KeySet(map.keySet());
+        }
+        return keySet;
     }
 
     @Override
     public Collection<V> values() {
-        return null;
+        if (values == null) {
+            values = new Values(map.values());
+        }
+        return values;
     }
 
     @Override
     public Set<Entry<K, V>> entrySet() {
-        return null;
+        if (entrySet == null) {
+            entrySet = new EntrySet(map.entrySet());
+        }
+        return entrySet;
     }
 
     /**
@@ -108,7 +219,7 @@ public class PopularMap<K, V> implements Map<K, V> {
      * 1 балл
      */
     public K getPopularKey() {
-        return null;
+        return keyPopularity.getMostPopular();
     }
 
 
@@ -117,7 +228,7 @@ public class PopularMap<K, V> implements Map<K, V> {
      * 1 балл
      */
     public int getKeyPopularity(K key) {
-        return 0;
+        return keyPopularity.get(key);
     }
 
     /**
@@ -125,7 +236,7 @@ public class PopularMap<K, V> implements Map<K, V> {
      * 1 балл
      */
     public V getPopularValue() {
-        return null;
+        return valuePopularity.getMostPopular();
     }
 
     /**
@@ -134,7 +245,7 @@ public class PopularMap<K, V> implements Map<K, V> {
      * 1 балл
      */
     public int getValuePopularity(V value) {
-        return 0;
+        return valuePopularity.get(value);
     }
 
     /**
@@ -142,6 +253,395 @@ public class PopularMap<K, V> implements Map<K, V> {
      * 2 балла
      */
     public Iterator<V> popularIterator() {
-        return null;
+        return valuePopularity.ascendingIterator();
+    }
+
+    Map<K, V> backingMap() {
+        return map;
+    }
+
+    Popularity<K> keyPopularity() {
+        return keyPopularity;
+    }
+
+    Popularity<V> valuePopularity() {
+        return valuePopularity;
+    }
+
+    /**
+     * Удаляет пары, подходящие под filter, и считает каждое удаление как remove по ключу пары.
+     * Сама проверка пар популярность не меняет.
+     */
+    private boolean removeEntries(Predicate<Entry<K, V>> filter) {
+        boolean modified = false;
+        for (Iterator<Entry<K, V>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Entry<K, V> entry = it.next();
+            if (filter.test(entry)) {
+                removeCounted(it, entry);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Удаляет текущую пару итератора по парам исходной мапы и считает это как remove по ее ключу
+     */
+    private void removeCounted(Iterator<Entry<K, V>> iterator, Entry<K, V> entry) {
+        K key = entry.getKey();
+        V oldValue = entry.getValue();
+        iterator.remove();
+        keyPopularity.increment(key);
+        touchValue(oldValue);
+    }
+
+    /**
+     * Ключи приходят в методы мапы как Object, но в мапу (и в индекс) могут попасть только ключи типа K
+     */
+    @SuppressWarnings("unchecked")
+    private void touchKey(Object key) {
+        keyPopularity.increment((K) key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void touchValue(Object value) {
+        if (value != null) {
+            valuePopularity.increment((V) value);
+        }
+    }
+
+    /**
+     * Живое представление ключей: обход считается использованием каждого ключа, contains - вызовом containsKey,
+     * удаление (через итератор, remove, removeAll, retainAll, removeIf) - вызовом remove для каждого удаляемого
+     * ключа. equals, hashCode и toString популярность не меняют.
+     */
+    private class KeySet extends AbstractSet<K> {
+        private final Set<K> keys;
+
+        KeySet(Set<K> keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return PopularMap.this.remove(o) != null;
+        }
+
+        /**
+         * Считается как remove для каждого элемента c
+         */
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            boolean modified = false;
+            for (Object key : c) {
+                modified |= remove(key);
+            }
+            return modified;
+        }
+
+        /**
+         * Считается как remove для каждого удаленного ключа
+         */
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return removeEntries(entry -> !c.contains(entry.getKey()));
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super K> filter) {
+            return removeEntries(entry -> filter.test(entry.getKey()));
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || keys.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return keys.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return keys.toString();
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            Iterator<K> iterator = keys.iterator();
+            return new Iterator<K>() {
+                private K last;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    last = iterator.next();
+                    keyPopularity.increment(last);
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    V oldValue = map.get(last);
+                    iterator.remove();
+                    keyPopularity.increment(last);
+                    touchValue(oldValue);
+                }
+            };
+        }
+    }
+
+    /**
+     * Живое представление значений: обход считается использованием каждого значения, contains - вызовом
+     * containsValue. Удаление значения (через итератор, remove, removeAll, retainAll, removeIf) - это удаление пары,
+     * поэтому оно считается как remove по ее ключу: и ключ, и удаленное значение получают по одному
+     * использованию. remove(o) значения, которого в мапе нет, ничего не удаляет и не считается.
+     * toString популярность не меняет.
+     */
+    private class Values extends AbstractCollection<V> {
+        private final Collection<V> values;
+
+        Values(Collection<V> values) {
+            this.values = values;
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            for (Iterator<Entry<K, V>> it = map.entrySet().iterator(); it.hasNext(); ) {
+                Entry<K, V> entry = it.next();
+                if (entry.getValue().equals(o)) {
+                    removeCounted(it, entry);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            return removeEntries(entry -> c.contains(entry.getValue()));
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return removeEntries(entry -> !c.contains(entry.getValue()));
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super V> filter) {
+            return removeEntries(entry -> filter.test(entry.getValue()));
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public String toString() {
+            return values.toString();
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            Iterator<Entry<K, V>> iterator = map.entrySet().iterator();
+            return new Iterator<V>() {
+                private Entry<K, V> last;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public V next() {
+                    last = iterator.next();
+                    valuePopularity.increment(last.getValue());
+                    return last.getValue();
+                }
+
+                @Override
+                public void remove() {
+                    removeCounted(iterator, last);
+                }
+            };
+        }
+    }
+
+    /**
+     * Живое представление пар: получение пары считается как get, setValue - как put, удаление
+     * (через итератор, remove, removeAll, retainAll, removeIf) - как remove по ключу пары.
+     * equals, hashCode и toString популярность не меняют.
+     */
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+        private final Set<Entry<K, V>> entries;
+
+        EntrySet(Set<Entry<K, V>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            V value = get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            PopularMap.this.remove(((Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        /**
+         * Считается как remove для каждого элемента c
+         */
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            boolean modified = false;
+            for (Object entry : c) {
+                modified |= remove(entry);
+            }
+            return modified;
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return removeEntries(entry -> !c.contains(entry));
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super Entry<K, V>> filter) {
+            return removeEntries(filter::test);
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || entries.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return entries.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return entries.toString();
+        }
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            Iterator<Entry<K, V>> iterator = entries.iterator();
+            return new Iterator<Entry<K, V>>() {
+                private Entry<K, V> last;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Entry<K, V> next() {
+                    last = iterator.next();
+                    keyPopularity.increment(last.getKey());
+                    valuePopularity.increment(last.getValue());
+                    return new PopularEntry(last);
+                }
+
+                @Override
+                public void remove() {
+                    removeCounted(iterator, last);
+                }
+            };
+        }
+    }
+
+    private class PopularEntry implements Entry<K, V> {
+        private final Entry<K, V> entry;
+
+        PopularEntry(Entry<K, V> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public K getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public V getValue() {
+            return entry.getValue();
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = entry.setValue(value);
+            keyPopularity.increment(entry.getKey());
+            valuePopularity.increment(value);
+            touchValue(oldValue);
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return entry.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return entry.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return entry.toString();
+        }
     }
 }
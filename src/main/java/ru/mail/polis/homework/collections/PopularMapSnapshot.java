@@ -0,0 +1,141 @@
+package ru.mail.polis.homework.collections;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Сохранение и восстановление {@link PopularMap} вместе с популярностью ключей и значений.
+ *
+ * Формат файла:
+ * magic (4 байта), версия (1 байт),
+ * количество пар (varint), пары [ключ, значение],
+ * количество счетчиков ключей (varint), счетчики [ключ, популярность (varint)],
+ * количество счетчиков значений (varint), счетчики [значение, популярность (varint)].
+ *
+ * Счетчики пишутся от самых непопулярных к самым популярным, поэтому при загрузке каждый элемент дописывается
+ * в конец индекса популярности за O(1) ({@link PopularityIndex#restore(Object, int)}), а порядок popularIterator
+ * сохраняется. Загрузка читает файл через отображение в память.
+ * Для мап с затуханием или приближенной популярностью сохраняется текущая (округленная) популярность,
+ * а загружается всегда обычная точная мапа.
+ */
+public final class PopularMapSnapshot {
+
+    private static final int MAGIC = 0x504D4150;
+    private static final byte VERSION = 1;
+
+    private PopularMapSnapshot() {
+    }
+
+    /**
+     * Снимок пишется во временный файл рядом с file, сбрасывается на диск и атомарно заменяет file,
+     * поэтому при падении во время сохранения остается предыдущий целый снимок.
+     */
+    public static <K, V> void save(PopularMap<K, V> map, Path file, SnapshotCodec<K> keyCodec,
+                                   SnapshotCodec<V> valueCodec) throws IOException {
+        Path target = file.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(channel), 1 << 16));
+                write(out, map, keyCodec, valueCodec);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static <K, V> void write(DataOutputStream out, PopularMap<K, V> map, SnapshotCodec<K> keyCodec,
+                                     SnapshotCodec<V> valueCodec) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+
+        Map<K, V> entries = map.backingMap();
+        SnapshotCodec.writeVarLong(out, entries.size());
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+            keyCodec.write(out, entry.getKey());
+            valueCodec.write(out, entry.getValue());
+        }
+        writeCounters(out, map.keyPopularity(), keyCodec);
+        writeCounters(out, map.valuePopularity(), valueCodec);
+    }
+
+    public static <K, V> PopularMap<K, V> load(Path file, SnapshotCodec<K> keyCodec,
+                                               SnapshotCodec<V> valueCodec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to map: " + length + " bytes");
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            try {
+                if (in.getInt() != MAGIC || in.get() != VERSION) {
+                    throw new IOException("Not a PopularMap snapshot: " + file);
+                }
+                int size = readCount(in, in.remaining());
+                Map<K, V> entries = new HashMap<>((int) (size / 0.75f) + 1);
+                for (int i = 0; i < size; i++) {
+                    entries.put(keyCodec.read(in), valueCodec.read(in));
+                }
+                PopularityIndex<K> keyPopularity = new PopularityIndex<>();
+                PopularityIndex<V> valuePopularity = new PopularityIndex<>();
+                readCounters(in, keyPopularity, keyCodec);
+                readCounters(in, valuePopularity, valueCodec);
+                return new PopularMap<>(entries, keyPopularity, valuePopularity);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated snapshot: " + file, e);
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                throw new IOException("Corrupted snapshot: " + file, e);
+            }
+        }
+    }
+
+    private static <T> void writeCounters(DataOutputStream out, Popularity<T> popularity,
+                                          SnapshotCodec<T> codec) throws IOException {
+        SnapshotCodec.writeVarLong(out, popularity.size());
+        for (Iterator<T> it = popularity.ascendingIterator(); it.hasNext(); ) {
+            T element = it.next();
+            codec.write(out, element);
+            SnapshotCodec.writeVarLong(out, popularity.get(element));
+        }
+    }
+
+    private static <T> void readCounters(MappedByteBuffer in, PopularityIndex<T> popularity,
+                                         SnapshotCodec<T> codec) {
+        int size = readCount(in, in.remaining());
+        for (int i = 0; i < size; i++) {
+            T element = codec.read(in);
+            int count = readCount(in, Integer.MAX_VALUE);
+            if (count > 0) {
+                popularity.restore(element, count);
+            }
+        }
+    }
+
+    /**
+     * Читает неотрицательное число не больше max. Количество элементов ограничено остатком файла:
+     * каждый элемент занимает хотя бы байт, поэтому испорченное количество не приводит к огромным аллокациям.
+     */
+    private static int readCount(MappedByteBuffer in, long max) {
+        long count = SnapshotCodec.readVarLong(in);
+        if (count < 0 || count > max) {
+            throw new IllegalStateException("Count out of range: " + count);
+        }
+        return (int) count;
+    }
+}
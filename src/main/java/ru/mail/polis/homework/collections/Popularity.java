@@ -0,0 +1,41 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.Iterator;
+
+/**
+ * Способ подсчета популярности элементов, который использует {@link PopularMap}.
+ *
+ * @param <T> - тип элемента
+ */
+interface Popularity<T> {
+
+    /**
+     * Учитывает еще одно использование элемента
+     */
+    void increment(T element);
+
+    /**
+     * Учитывает сразу delta использований элемента (delta > 0)
+     */
+    void add(T element, int delta);
+
+    /**
+     * Возвращает популярность элемента (0, если элемент ни разу не встречался)
+     */
+    int get(Object element);
+
+    /**
+     * Возвращает самый популярный элемент или null, если элементов еще не было
+     */
+    T getMostPopular();
+
+    /**
+     * Количество элементов, для которых хранится популярность
+     */
+    int size();
+
+    /**
+     * Итератор по элементам от самых НЕ популярных к самым популярным
+     */
+    Iterator<T> ascendingIterator();
+}
@@ -0,0 +1,284 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Частотный индекс (таблица лидеров) для {@link PopularMap}.
+ *
+ * Элементы с одинаковой популярностью лежат в одной корзине, корзины образуют двусвязный список,
+ * упорядоченный по возрастанию популярности. Увеличение счетчика на единицу переносит элемент в соседнюю
+ * корзину за O(1), самый популярный элемент - это первый элемент последней корзины, тоже O(1).
+ *
+ * @param <T> - тип элемента
+ */
+class PopularityIndex<T> implements Popularity<T> {
+
+    private final Map<T, Node<T>> nodes = new HashMap<>();
+
+    /**
+     * Корзина с самыми непопулярными элементами
+     */
+    private Bucket<T> head;
+
+    /**
+     * Корзина с самыми популярными элементами
+     */
+    private Bucket<T> tail;
+
+    /**
+     * Количество изменений порядка элементов, нужно итератору, чтобы заметить изменение индекса
+     */
+    private int modCount;
+
+    @Override
+    public void increment(T element) {
+        add(element, 1);
+    }
+
+    /**
+     * Увеличивает популярность элемента на delta. Элемент переносится вперед по списку корзин, поэтому
+     * стоимость - O(количество различных значений популярности между старым и новым значением),
+     * для delta = 1 это O(1).
+     */
+    @Override
+    public void add(T element, int delta) {
+        if (delta <= 0) {
+            throw new IllegalArgumentException("delta must be positive: " + delta);
+        }
+        modCount++;
+        Node<T> node = nodes.get(element);
+        Bucket<T> source = null;
+        int newCount = delta;
+        if (node == null) {
+            node = new Node<>(element);
+            nodes.put(element, node);
+        } else {
+            source = node.bucket;
+            newCount += source.count;
+        }
+
+        // Ищем последнюю корзину, популярность которой не больше новой
+        Bucket<T> before = source;
+        Bucket<T> cursor = source == null ? head : source.next;
+        while (cursor != null && cursor.count <= newCount) {
+            before = cursor;
+            cursor = cursor.next;
+        }
+
+        if (before == source && source != null && source.first == source.last) {
+            // Элемент один в своей корзине - просто переименовываем корзину, без аллокаций
+            source.count = newCount;
+            return;
+        }
+        Bucket<T> target = before;
+        if (target == null || target.count != newCount) {
+            target = new Bucket<>(newCount);
+            insertAfter(before, target);
+        }
+        if (source == null) {
+            target.append(node);
+        } else {
+            moveTo(node, target);
+        }
+    }
+
+    /**
+     * Восстанавливает популярность элемента при загрузке снимка. Если элемента еще нет в индексе,
+     * а count не меньше популярности последней корзины (счетчики приходят по неубыванию), элемент
+     * дописывается в конец списка корзин за O(1). Иначе работает как {@link #add(Object, int)}.
+     */
+    void restore(T element, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        if ((tail != null && count < tail.count) || nodes.containsKey(element)) {
+            add(element, count);
+            return;
+        }
+        modCount++;
+        Node<T> node = new Node<>(element);
+        nodes.put(element, node);
+        if (tail == null || tail.count != count) {
+            insertAfter(tail, new Bucket<>(count));
+        }
+        tail.append(node);
+    }
+
+    /**
+     * Удаляет элемент из индекса и возвращает его популярность (0, если элемента не было)
+     */
+    public int remove(Object element) {
+        Node<T> node = nodes.remove(element);
+        if (node == null) {
+            return 0;
+        }
+        modCount++;
+        Bucket<T> bucket = node.bucket;
+        bucket.unlink(node);
+        if (bucket.first == null) {
+            removeBucket(bucket);
+        }
+        return bucket.count;
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Возвращает самый НЕ популярный элемент или null, если индекс пуст
+     */
+    public T getLeastPopular() {
+        return head == null ? null : head.first.element;
+    }
+
+    @Override
+    public int get(Object element) {
+        Node<T> node = nodes.get(element);
+        return node == null ? 0 : node.bucket.count;
+    }
+
+    /**
+     * Среди равных по популярности возвращается тот, кто первым достиг этой популярности.
+     */
+    @Override
+    public T getMostPopular() {
+        return tail == null ? null : tail.first.element;
+    }
+
+    /**
+     * Ленивый итератор: каждый вызов next() - O(1), ничего не сортируется и не копируется.
+     * Если индекс изменился во время обхода, итератор бросает {@link ConcurrentModificationException}.
+     */
+    @Override
+    public Iterator<T> ascendingIterator() {
+        return new AscendingIterator();
+    }
+
+    private void moveTo(Node<T> node, Bucket<T> target) {
+        Bucket<T> source = node.bucket;
+        source.unlink(node);
+        if (source.first == null) {
+            removeBucket(source);
+        }
+        target.append(node);
+    }
+
+    /**
+     * Вставляет корзину после prev (если prev == null, то в начало списка)
+     */
+    private void insertAfter(Bucket<T> prev, Bucket<T> bucket) {
+        Bucket<T> next = prev == null ? head : prev.next;
+        bucket.prev = prev;
+        bucket.next = next;
+        if (prev == null) {
+            head = bucket;
+        } else {
+            prev.next = bucket;
+        }
+        if (next == null) {
+            tail = bucket;
+        } else {
+            next.prev = bucket;
+        }
+    }
+
+    private void removeBucket(Bucket<T> bucket) {
+        if (bucket.prev == null) {
+            head = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (bucket.next == null) {
+            tail = bucket.prev;
+        } else {
+            bucket.next.prev = bucket.prev;
+        }
+        bucket.prev = null;
+        bucket.next = null;
+    }
+
+    private class AscendingIterator implements Iterator<T> {
+        private final int expectedModCount = modCount;
+        private Node<T> next = head == null ? null : head.first;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Node<T> current = next;
+            if (current.next != null) {
+                next = current.next;
+            } else {
+                Bucket<T> bucket = current.bucket.next;
+                next = bucket == null ? null : bucket.first;
+            }
+            return current.element;
+        }
+    }
+
+    private static class Node<T> {
+        private final T element;
+        private Bucket<T> bucket;
+        private Node<T> prev;
+        private Node<T> next;
+
+        Node(T element) {
+            this.element = element;
+        }
+    }
+
+    private static class Bucket<T> {
+        private int count;
+        private Node<T> first;
+        private Node<T> last;
+        private Bucket<T> prev;
+        private Bucket<T> next;
+
+        Bucket(int count) {
+            this.count = count;
+        }
+
+        void append(Node<T> node) {
+            node.bucket = this;
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void unlink(Node<T> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.bucket = null;
+        }
+    }
+}
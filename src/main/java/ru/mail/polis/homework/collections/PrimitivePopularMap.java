@@ -0,0 +1,386 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Общая часть {@link LongPopularMap} и {@link IntPopularMap}: аналог {@link PopularMap} для примитивных ключей.
+ *
+ * Ключи, значения и счетчики популярности ключей лежат в параллельных массивах с открытой адресацией
+ * (линейное пробирование), поэтому ни ключи, ни счетчики не упаковываются в объекты, а get/put/
+ * getKeyPopularity не создают мусора. Популярность значений считается в {@link PopularityIndex}.
+ * Как хранить ключи, решают наследники (long[] или int[]), здесь ключ всегда передается как long.
+ *
+ * Ячейку в таблице занимают только ключи, которые хотя бы раз клали через put: популярность такого ключа
+ * сохраняется и после удаления, поэтому ячейки никогда не освобождаются и не нужны "надгробия".
+ * Обращения get/containsKey/remove к ключам, которых в мапе никогда не было, по условию тоже считаются,
+ * но такие ключи не занимают ячеек основной таблицы: их счетчики лежат в отдельной таблице ключ -> счетчик
+ * (12 байт на ключ), размер которой можно ограничить (maxMissedKeys). Когда ограничение достигнуто,
+ * промахи по новым ключам не считаются. При первом put ключа его счетчик переносится в основную таблицу.
+ *
+ * @param <V> - тип значения
+ */
+abstract class PrimitivePopularMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final PopularityIndex<V> valuePopularity = new PopularityIndex<>();
+    private final MissCounts missed;
+
+    private Object[] values;
+
+    /**
+     * Популярность ключа в ячейке. 0 означает, что ячейка свободна
+     */
+    private int[] keyCounts;
+
+    private int mask;
+    private int threshold;
+
+    /**
+     * Количество занятых ячеек (ключи, которые хотя бы раз клали в мапу)
+     */
+    private int used;
+
+    /**
+     * Количество ключей, у которых сейчас есть значение
+     */
+    private int size;
+
+    private long popularKey;
+    private int popularKeyCount;
+
+    /**
+     * @param expectedKeys  - ожидаемое количество различных ключей, которые будут класть в мапу
+     * @param maxMissedKeys - сколько максимум ключей, которых нет в мапе, считать при промахах
+     */
+    PrimitivePopularMap(int expectedKeys, int maxMissedKeys) {
+        if (expectedKeys < 0) {
+            throw new IllegalArgumentException("expectedKeys < 0: " + expectedKeys);
+        }
+        if (maxMissedKeys < 0) {
+            throw new IllegalArgumentException("maxMissedKeys < 0: " + maxMissedKeys);
+        }
+        this.missed = new MissCounts(maxMissedKeys);
+        allocate(capacityFor(expectedKeys));
+    }
+
+    /**
+     * Создает массив ключей на capacity ячеек
+     */
+    abstract void allocateKeys(int capacity);
+
+    abstract long keyAt(int slot);
+
+    abstract void setKey(int slot, long key);
+
+    abstract int hash(long key);
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Удаляет все значения. Популярность ключей и значений сохраняется.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public V getPopularValue() {
+        return valuePopularity.getMostPopular();
+    }
+
+    public int getValuePopularity(V value) {
+        return valuePopularity.get(value);
+    }
+
+    /**
+     * Итератор по значениям от самых НЕ популярных к самым популярным, O(1) на каждый next()
+     */
+    public Iterator<V> popularIterator() {
+        return valuePopularity.ascendingIterator();
+    }
+
+    public boolean containsValue(V value) {
+        touchValue(value);
+        for (Object current : values) {
+            if (value.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean containsKeyInternal(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            countMiss(key);
+            return false;
+        }
+        bump(slot, key);
+        return values[slot] != null;
+    }
+
+    V getInternal(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            countMiss(key);
+            return null;
+        }
+        bump(slot, key);
+        V value = valueAt(slot);
+        touchValue(value);
+        return value;
+    }
+
+    V putInternal(long key, V value) {
+        int slot = find(key);
+        if (slot < 0) {
+            slot = reserve(key, slot);
+        }
+        bump(slot, key);
+        V oldValue = valueAt(slot);
+        values[slot] = value;
+        if (oldValue == null) {
+            size++;
+        }
+        valuePopularity.increment(value);
+        touchValue(oldValue);
+        return oldValue;
+    }
+
+    V removeInternal(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            countMiss(key);
+            return null;
+        }
+        bump(slot, key);
+        V oldValue = valueAt(slot);
+        if (oldValue != null) {
+            values[slot] = null;
+            size--;
+        }
+        touchValue(oldValue);
+        return oldValue;
+    }
+
+    /**
+     * @throws NoSuchElementException если ни один ключ еще не использовался
+     */
+    long popularKey() {
+        if (popularKeyCount == 0) {
+            throw new NoSuchElementException("No key has been used yet");
+        }
+        return popularKey;
+    }
+
+    int keyPopularity(long key) {
+        int slot = find(key);
+        return slot < 0 ? missed.get(key) : keyCounts[slot];
+    }
+
+    /**
+     * Занимает свободную ячейку для ключа и переносит в нее счетчик промахов по этому ключу
+     *
+     * @param slot - результат find(key) для отсутствующего ключа
+     */
+    private int reserve(long key, int slot) {
+        if (used >= threshold) {
+            rehash(keyCounts.length << 1);
+            slot = find(key);
+        }
+        slot = -slot - 1;
+        setKey(slot, key);
+        keyCounts[slot] = missed.remove(key);
+        used++;
+        return slot;
+    }
+
+    private void bump(int slot, long key) {
+        int count = ++keyCounts[slot];
+        updatePopularKey(key, count);
+    }
+
+    private void countMiss(long key) {
+        int count = missed.increment(key);
+        if (count > 0) {
+            updatePopularKey(key, count);
+        }
+    }
+
+    private void updatePopularKey(long key, int count) {
+        if (count > popularKeyCount) {
+            popularKeyCount = count;
+            popularKey = key;
+        }
+    }
+
+    private void touchValue(V value) {
+        if (value != null) {
+            valuePopularity.increment(value);
+        }
+    }
+
+    /**
+     * Возвращает индекс ячейки с ключом или (-(индекс свободной ячейки) - 1), если ключа нет
+     */
+    private int find(long key) {
+        int slot = hash(key) & mask;
+        while (keyCounts[slot] != 0) {
+            if (keyAt(slot) == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    private void rehash(int newCapacity) {
+        if (keyCounts.length == MAX_CAPACITY) {
+            throw new IllegalStateException(getClass().getSimpleName() + " is full");
+        }
+        long[] oldKeys = new long[keyCounts.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            oldKeys[i] = keyAt(i);
+        }
+        Object[] oldValues = values;
+        int[] oldCounts = keyCounts;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = -find(oldKeys[i]) - 1;
+                setKey(slot, oldKeys[i]);
+                values[slot] = oldValues[i];
+                keyCounts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        allocateKeys(capacity);
+        values = new Object[capacity];
+        keyCounts = new int[capacity];
+        mask = capacity - 1;
+        threshold = capacity == MAX_CAPACITY ? MAX_CAPACITY - 1 : (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedKeys) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity * LOAD_FACTOR <= expectedKeys) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Счетчики промахов: ключ -> количество обращений, открытая адресация с удалением сдвигом назад
+     */
+    private static class MissCounts {
+        private final int maxKeys;
+        private long[] keys = new long[DEFAULT_CAPACITY];
+        private int[] counts = new int[DEFAULT_CAPACITY];
+        private int size;
+
+        MissCounts(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+
+        int get(long key) {
+            int slot = find(key);
+            return slot < 0 ? 0 : counts[slot];
+        }
+
+        /**
+         * @return новый счетчик ключа или 0, если ключ не поместился
+         */
+        int increment(long key) {
+            int slot = find(key);
+            if (slot >= 0) {
+                return ++counts[slot];
+            }
+            if (size >= maxKeys) {
+                return 0;
+            }
+            if (size >= keys.length * LOAD_FACTOR) {
+                resize(keys.length << 1);
+                slot = find(key);
+            }
+            slot = -slot - 1;
+            keys[slot] = key;
+            counts[slot] = 1;
+            size++;
+            return 1;
+        }
+
+        /**
+         * Удаляет ключ и возвращает его счетчик (0, если ключа не было)
+         */
+        int remove(long key) {
+            int slot = find(key);
+            if (slot < 0) {
+                return 0;
+            }
+            int count = counts[slot];
+            int mask = keys.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; counts[next] != 0; next = (next + 1) & mask) {
+                int home = mix(keys[next]) & mask;
+                // Элемент можно сдвинуть в дыру, если его "родная" ячейка не лежит между дырой и им
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    counts[hole] = counts[next];
+                    hole = next;
+                }
+            }
+            counts[hole] = 0;
+            size--;
+            return count;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (counts[slot] != 0) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -slot - 1;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[capacity];
+            counts = new int[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int slot = -find(oldKeys[i]) - 1;
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
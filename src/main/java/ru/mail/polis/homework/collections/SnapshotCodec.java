@@ -0,0 +1,95 @@
+package ru.mail.polis.homework.collections;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Способ записи ключей и значений в снимок {@link PopularMapSnapshot}.
+ * Запись идет в поток, чтение - из отображенного в память файла. На испорченных данных read бросает
+ * {@link java.nio.BufferUnderflowException}, {@link IllegalStateException} или {@link IllegalArgumentException},
+ * {@link PopularMapSnapshot#load} превращает их в {@link IOException}.
+ *
+ * @param <T> - тип ключа или значения
+ */
+public interface SnapshotCodec<T> {
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(ByteBuffer in);
+
+    /**
+     * Строка: длина в varint и байты UTF-8
+     */
+    SnapshotCodec<String> STRING = new SnapshotCodec<String>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public String read(ByteBuffer in) {
+            long length = readVarLong(in);
+            if (length < 0 || length > in.remaining()) {
+                throw new IllegalStateException("Malformed string length: " + length);
+            }
+            byte[] bytes = new byte[(int) length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Long в zigzag varint: маленькие по модулю числа занимают 1-2 байта
+     */
+    SnapshotCodec<Long> LONG = new SnapshotCodec<Long>() {
+        @Override
+        public void write(DataOutput out, Long value) throws IOException {
+            writeVarLong(out, (value << 1) ^ (value >> 63));
+        }
+
+        @Override
+        public Long read(ByteBuffer in) {
+            long encoded = readVarLong(in);
+            return (encoded >>> 1) ^ -(encoded & 1);
+        }
+    };
+
+    SnapshotCodec<Integer> INTEGER = new SnapshotCodec<Integer>() {
+        @Override
+        public void write(DataOutput out, Integer value) throws IOException {
+            LONG.write(out, value.longValue());
+        }
+
+        @Override
+        public Integer read(ByteBuffer in) {
+            return LONG.read(in).intValue();
+        }
+    };
+
+    /**
+     * Беззнаковый varint: по 7 бит в байте, старший бит - признак продолжения
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+}
@@ -0,0 +1,113 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Алгоритм Space-Saving (Metwally, Agrawal, El Abbadi) для поиска самых частых элементов потока
+ * в фиксированной памяти.
+ *
+ * Хранится не больше capacity счетчиков. Если пришел новый элемент, а свободных счетчиков нет, то вытесняется
+ * элемент с минимальным счетчиком min, а новый элемент получает счетчик min + 1 (и ошибку min).
+ * Гарантии для потока из N элементов:
+ * - счетчик отслеживаемого элемента завышает его реальную частоту не больше чем на N / capacity
+ * (точная граница для конкретного элемента - {@link #error(Object)});
+ * - любой элемент с частотой больше N / capacity гарантированно отслеживается.
+ *
+ * Счетчики хранятся в {@link PopularityIndex}, поэтому и вставка, и вытеснение - O(1).
+ *
+ * @param <T> - тип элемента
+ */
+public class SpaceSaving<T> {
+
+    private final int capacity;
+    private final PopularityIndex<T> counters = new PopularityIndex<>();
+    private final Map<T, Integer> errors = new HashMap<>();
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Учитывает очередное появление элемента в потоке
+     */
+    public void offer(T element) {
+        offer(element, 1);
+    }
+
+    /**
+     * Учитывает сразу count появлений элемента в потоке
+     */
+    public void offer(T element, int count) {
+        if (counters.size() < capacity || counters.get(element) != 0) {
+            counters.add(element, count);
+            return;
+        }
+        T victim = counters.getLeastPopular();
+        int min = counters.remove(victim);
+        errors.remove(victim);
+        counters.add(element, min + count);
+        errors.put(element, min);
+    }
+
+    /**
+     * Оценка частоты элемента сверху (0, если элемент сейчас не отслеживается)
+     */
+    public int count(Object element) {
+        return counters.get(element);
+    }
+
+    /**
+     * На сколько максимум count(element) больше реальной частоты элемента
+     */
+    public int error(Object element) {
+        Integer error = errors.get(element);
+        return error == null ? 0 : error;
+    }
+
+    /**
+     * Самый частый из отслеживаемых элементов или null, если элементов не было
+     */
+    public T getMostFrequent() {
+        return counters.getMostPopular();
+    }
+
+    /**
+     * До k самых частых элементов в порядке убывания счетчика
+     */
+    public List<T> top(int k) {
+        List<T> ascending = new ArrayList<>(counters.size());
+        for (Iterator<T> it = counters.ascendingIterator(); it.hasNext(); ) {
+            ascending.add(it.next());
+        }
+        List<T> result = new ArrayList<>(Math.min(k, ascending.size()));
+        for (int i = ascending.size() - 1; i >= 0 && result.size() < k; i--) {
+            result.add(ascending.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Итератор по отслеживаемым элементам от самых редких к самым частым
+     */
+    public Iterator<T> ascendingIterator() {
+        return counters.ascendingIterator();
+    }
+
+    /**
+     * Количество отслеживаемых элементов (не больше capacity)
+     */
+    public int size() {
+        return counters.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
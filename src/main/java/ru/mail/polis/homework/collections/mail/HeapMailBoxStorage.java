@@ -0,0 +1,331 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище по умолчанию: письма лежат в куче, у каждого получателя свой ящик, поэтому потоки, пишущие разным
+ * получателям, друг другу не мешают. Без ограничений ({@link RetentionPolicy#UNLIMITED}) письма из ящиков
+ * не удаляются, и ящик - это неблокирующая очередь, в которую письма добавляются без блокировок.
+ *
+ * Размер ящиков можно ограничить {@link RetentionPolicy}. Ограничения на количество писем у получателя и на
+ * возраст писем проверяются при добавлении письма (и возраст - при чтении ящиков), без фоновых потоков.
+ * Тогда у каждого ящика своя блокировка: письма ящика добавляются и удаляются только под ней, поэтому каждое
+ * удаленное письмо вычитается из общего счетчика ровно один раз. Опустевший ящик удаляется из хранилища
+ * и помечается удаленным: письмо, которое успело его найти, повторяет добавление уже в новый ящик.
+ * При ограничении общего количества писем добавление идет под общей блокировкой, которая поддерживает порядок
+ * получателей по последнему письму (LRU) и удаляет ящики самых "холодных" получателей.
+ *
+ * Хранилище, созданное через {@link #searchable()}, ведет обратный индекс ({@link MailSearchIndex}) по текстам
+ * {@link MailMessage}. Индекс хранит только номера писем, письмо по номеру находится в таблице хранилища,
+ * из которой оно удаляется вместе с самим письмом (по {@link RetentionPolicy} тоже), поэтому поиск
+ * находит только письма, которые сейчас лежат в ящиках.
+ *
+ * @param <T> - тип писем
+ */
+public class HeapMailBoxStorage<T extends Mail<?>> implements MailBoxStorage<T> {
+
+    private final ConcurrentHashMap<String, Box<T>> mailBox = new ConcurrentHashMap<>();
+    private final RetentionPolicy policy;
+    private final long maxAgeNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * Могут ли письма удаляться из ящиков. Если нет, ящики пополняются без блокировок
+     */
+    private final boolean trimming;
+
+    /**
+     * Обратный индекс и письма по номеру в индексе или null, если хранилище создано без поиска
+     */
+    private final MailSearchIndex index;
+    private final ConcurrentHashMap<Integer, Stamped<T>> indexed;
+
+    /**
+     * Получатели в порядке последнего письма, от самого давнего. Используется только при ограничении maxTotal.
+     * Блокировка LRU берется раньше блокировки ящика.
+     */
+    private final LinkedHashMap<String, Box<T>> leastRecentlyUsed;
+
+    public HeapMailBoxStorage() {
+        this(RetentionPolicy.UNLIMITED);
+    }
+
+    public HeapMailBoxStorage(RetentionPolicy policy) {
+        this(policy, System::nanoTime);
+    }
+
+    HeapMailBoxStorage(RetentionPolicy policy, LongSupplier nanoClock) {
+        this(policy, nanoClock, false);
+    }
+
+    private HeapMailBoxStorage(RetentionPolicy policy, LongSupplier nanoClock, boolean searchable) {
+        this.policy = policy;
+        this.indexed = searchable ? new ConcurrentHashMap<>() : null;
+        this.index = searchable ? new MailSearchIndex(indexed::containsKey) : null;
+        this.maxAgeNanos = policy.getMaxAge() == null ? Long.MAX_VALUE : policy.getMaxAge().toNanos();
+        this.nanoClock = nanoClock;
+        this.leastRecentlyUsed = policy.hasMaxTotal() ? new LinkedHashMap<>(16, 0.75f, true) : null;
+        this.trimming = policy.getMaxPerRecipient() != Integer.MAX_VALUE || policy.getMaxAge() != null
+                || policy.hasMaxTotal();
+    }
+
+    /**
+     * Хранилище без ограничений с поиском по текстам писем
+     */
+    public static <T extends Mail<?>> HeapMailBoxStorage<T> searchable() {
+        return searchable(RetentionPolicy.UNLIMITED);
+    }
+
+    /**
+     * Хранилище с поиском по текстам писем, которые остались в нем по policy
+     */
+    public static <T extends Mail<?>> HeapMailBoxStorage<T> searchable(RetentionPolicy policy) {
+        return new HeapMailBoxStorage<>(policy, System::nanoTime, true);
+    }
+
+    @Override
+    public void add(T mail) {
+        if (leastRecentlyUsed == null) {
+            append(mail);
+            return;
+        }
+        synchronized (leastRecentlyUsed) {
+            Box<T> box = append(mail);
+            leastRecentlyUsed.put(mail.getRecipient(), box);
+            evictColdRecipients(box);
+        }
+    }
+
+    /**
+     * Возвращается снимок: письма, пришедшие после вызова, в него не попадут. Без ограничений ящики читаются
+     * без блокировок, и в снимок могут попасть письма, добавленные во время обхода.
+     * Ящики, в которых не осталось писем моложе maxAge, удаляются.
+     */
+    @Override
+    public Map<String, List<T>> getMailBox() {
+        Map<String, List<T>> result = new HashMap<>();
+        if (!trimming) {
+            mailBox.forEach((recipient, box) -> {
+                if (!box.queue.isEmpty()) {
+                    result.put(recipient, mails(box));
+                }
+            });
+            return result;
+        }
+        long now = nanoClock.getAsLong();
+        Map<String, Box<T>> emptied = new HashMap<>();
+        mailBox.forEach((recipient, box) -> {
+            List<T> mails;
+            synchronized (box) {
+                expire(box, now);
+                if (box.queue.isEmpty()) {
+                    if (!box.removed) {
+                        removeBox(recipient, box);
+                        emptied.put(recipient, box);
+                    }
+                    return;
+                }
+                mails = mails(box);
+            }
+            result.put(recipient, mails);
+        });
+        if (leastRecentlyUsed != null && !emptied.isEmpty()) {
+            synchronized (leastRecentlyUsed) {
+                emptied.forEach(leastRecentlyUsed::remove);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сколько писем сейчас хранится
+     */
+    public long size() {
+        return total.get();
+    }
+
+    /**
+     * Поток ленивый: письма находятся по мере чтения, в порядке добавления
+     *
+     * @throws UnsupportedOperationException если хранилище создано без поиска
+     */
+    @Override
+    public Stream<MailMessage> searchAll(String... words) {
+        return resolve(searchIndex().searchAll(words));
+    }
+
+    /**
+     * @throws UnsupportedOperationException если хранилище создано без поиска
+     */
+    @Override
+    public Stream<MailMessage> searchAny(String... words) {
+        return resolve(searchIndex().searchAny(words));
+    }
+
+    private MailSearchIndex searchIndex() {
+        if (index == null) {
+            throw new UnsupportedOperationException("Storage has no search index, use HeapMailBoxStorage.searchable()");
+        }
+        return index;
+    }
+
+    /**
+     * Письма по номерам из индекса. Номера удаленных писем, которые еще остались в индексе, пропускаются
+     */
+    private Stream<MailMessage> resolve(IntStream ids) {
+        return ids.mapToObj(indexed::get)
+                .filter(Objects::nonNull)
+                .map(stamped -> (MailMessage) stamped.mail);
+    }
+
+    private List<T> mails(Box<T> box) {
+        List<T> mails = new ArrayList<>();
+        for (Stamped<T> stamped : box.queue) {
+            mails.add(stamped.mail);
+        }
+        return mails;
+    }
+
+    private Box<T> append(T mail) {
+        String recipient = mail.getRecipient();
+        long now = nanoClock.getAsLong();
+        Stamped<T> stamped = new Stamped<>(mail, now);
+        if (index != null && mail instanceof MailMessage) {
+            stamped.id = index.add(((MailMessage) mail).getText(), id -> indexed.put(id, stamped));
+        }
+        while (true) {
+            Box<T> box = mailBox.get(recipient);
+            if (box == null) {
+                box = mailBox.computeIfAbsent(recipient, r -> new Box<>(trimming));
+            }
+            if (!trimming) {
+                box.queue.add(stamped);
+                total.incrementAndGet();
+                return box;
+            }
+            synchronized (box) {
+                if (box.removed) {
+                    // Ящик удалили, пока мы его искали, - кладем письмо в новый
+                    continue;
+                }
+                box.queue.add(stamped);
+                total.incrementAndGet();
+                for (int excess = box.queue.size() - policy.getMaxPerRecipient(); excess > 0; excess--) {
+                    pollOldest(box);
+                }
+                expire(box, now);
+                return box;
+            }
+        }
+    }
+
+    /**
+     * Удаляет устаревшие письма. Вызывается под блокировкой ящика
+     */
+    private void expire(Box<T> box, long now) {
+        if (maxAgeNanos == Long.MAX_VALUE) {
+            return;
+        }
+        Stamped<T> oldest;
+        while ((oldest = box.queue.peek()) != null && now - oldest.nanos > maxAgeNanos) {
+            pollOldest(box);
+        }
+    }
+
+    /**
+     * Удаляет самое старое письмо ящика. Вызывается под блокировкой ящика
+     */
+    private void pollOldest(Box<T> box) {
+        Stamped<T> oldest = box.queue.poll();
+        if (oldest != null) {
+            total.decrementAndGet();
+            dropFromIndex(oldest);
+        }
+    }
+
+    /**
+     * Удаляет ящик из хранилища вместе с письмами. Вызывается под блокировкой ящика
+     */
+    private void removeBox(String recipient, Box<T> box) {
+        box.removed = true;
+        total.addAndGet(-box.queue.size());
+        if (index != null) {
+            box.queue.forEach(this::dropFromIndex);
+        }
+        box.queue.clear();
+        mailBox.remove(recipient, box);
+    }
+
+    private void dropFromIndex(Stamped<T> stamped) {
+        if (stamped.id != Stamped.NOT_INDEXED) {
+            indexed.remove(stamped.id);
+            index.remove();
+        }
+    }
+
+    private void evictColdRecipients(Box<T> current) {
+        Iterator<Map.Entry<String, Box<T>>> it = leastRecentlyUsed.entrySet().iterator();
+        while (total.get() > policy.getMaxTotal() && it.hasNext()) {
+            Map.Entry<String, Box<T>> coldest = it.next();
+            Box<T> box = coldest.getValue();
+            synchronized (box) {
+                if (box == current) {
+                    // Остался только текущий получатель - удаляем его самые старые письма
+                    while (total.get() > policy.getMaxTotal() && !box.queue.isEmpty()) {
+                        pollOldest(box);
+                    }
+                    return;
+                }
+                if (!box.removed) {
+                    removeBox(coldest.getKey(), box);
+                }
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     * Письма одного получателя. Если письма могут удаляться, все поля меняются только под блокировкой ящика,
+     * иначе письма добавляются в неблокирующую очередь, а ящик никогда не удаляется
+     */
+    private static class Box<T> {
+        private final Queue<Stamped<T>> queue;
+        private boolean removed;
+
+        Box(boolean trimming) {
+            this.queue = trimming ? new ArrayDeque<>() : new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    private static class Stamped<T> {
+        private static final int NOT_INDEXED = -1;
+
+        private final T mail;
+        private final long nanos;
+
+        /**
+         * Номер письма в индексе поиска
+         */
+        private int id = NOT_INDEXED;
+
+        Stamped(T mail, long nanos) {
+            this.mail = mail;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -1,2 +1,57 @@
-package ru.mail.polis.homework.collections.mail;public class Mail {
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.Objects;
+
+/**
+ * Общая часть письма и зарплаты: получатель, отправитель и содержимое.
+ *
+ * @param <T> - тип содержимого
+ */
+public class Mail<T> {
+
+    private final String recipient;
+    private final String sender;
+    private final T content;
+
+    public Mail(String recipient, String sender, T content) {
+        this.recipient = recipient;
+        this.sender = sender;
+        this.content = content;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public T getContent() {
+        return content;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Mail<?> mail = (Mail<?>) o;
+        return Objects.equals(recipient, mail.recipient)
+                && Objects.equals(sender, mail.sender)
+                && Objects.equals(content, mail.content);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(recipient, sender, content);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + sender + " -> " + recipient + ": " + content + "}";
+    }
 }
@@ -0,0 +1,43 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище почтовых ящиков для {@link MailService}.
+ * Реализации должны позволять вызывать add из нескольких потоков одновременно.
+ * Поиск писем по словам хранилище поддерживать не обязано.
+ *
+ * @param <T> - тип писем
+ */
+public interface MailBoxStorage<T extends Mail<?>> {
+
+    /**
+     * Кладет письмо в ящик его получателя
+     */
+    void add(T mail);
+
+    /**
+     * Мапа получатель -> все письма этого получателя на момент вызова
+     */
+    Map<String, List<T>> getMailBox();
+
+    /**
+     * Письма, которые сейчас в хранилище и в тексте которых есть все слова (без учета регистра)
+     *
+     * @throws UnsupportedOperationException если хранилище не умеет искать
+     */
+    default Stream<MailMessage> searchAll(String... words) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " has no search index");
+    }
+
+    /**
+     * Письма, которые сейчас в хранилище и в тексте которых есть хотя бы одно из слов (без учета регистра)
+     *
+     * @throws UnsupportedOperationException если хранилище не умеет искать
+     */
+    default Stream<MailMessage> searchAny(String... words) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " has no search index");
+    }
+}
@@ -0,0 +1,421 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал (write-ahead log) принятых писем и зарплат. Подходит для {@link MailMessage} и {@link Salary}.
+ *
+ * Журнал - это каталог с сегментами segment-N.log. Запись сегмента: длина тела (int), CRC32 тела (int), тело:
+ * тип (1 байт), получатель, отправитель (длина в varint + UTF-8) и текст письма (так же) или сумма (long).
+ * Когда сегмент превышает segmentSize, начинается новый; после создания сегмента каталог тоже сбрасывается
+ * на диск, чтобы файл не потерялся при падении. При открытии журнала запись продолжается в последнем сегменте:
+ * недописанный после падения хвост отрезается. Пустые сегменты, кроме последнего, удаляются.
+ *
+ * {@link #append(Mail)} возвращается только после fsync. fsync выполняет один поток за раз: пока он работает,
+ * остальные потоки дописывают свои записи и ждут, а следующий fsync подтверждает их все сразу (group commit).
+ * {@link #appendAll(List)} пишет пачку писем и подтверждает ее одним fsync.
+ *
+ * Если запись в файл или fsync не удались, журнал переходит в состояние ошибки: часть записи могла попасть
+ * на диск, поэтому дальше писать в этот сегмент нельзя, и все следующие append бросают исключение.
+ *
+ * {@link #replay(Consumer)} читает сегменты через отображение в память. Повреждением хвоста считается
+ * поврежденная запись последнего сегмента, после которой нет ни одной записи с верной CRC (недописанная запись,
+ * мусор или нули до конца сегмента): так выглядит прерванная запись, она пропускается. Любое другое
+ * повреждение, например испорченная длина записи в середине сегмента, - это потеря данных, replay и
+ * конструктор бросают {@link IOException}.
+ */
+public class MailLog implements AutoCloseable {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final byte MESSAGE = 0;
+    private static final byte SALARY = 1;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+
+    private FileChannel segment;
+    private long segmentIndex;
+    private long segmentBytes;
+
+    /**
+     * Ошибка записи, после которой журнал больше не принимает записи
+     */
+    private IOException failure;
+
+    /**
+     * Номер последней записанной записи
+     */
+    private volatile long written;
+
+    /**
+     * Номер последней записи, которая точно на диске
+     */
+    private volatile long durable;
+
+    public MailLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MailLog(Path directory, long segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize is too small: " + segmentSize);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        List<Path> existing = segments();
+        if (existing.isEmpty()) {
+            this.segment = openSegment(0);
+            return;
+        }
+        Path last = existing.get(existing.size() - 1);
+        boolean removed = false;
+        for (Path path : existing.subList(0, existing.size() - 1)) {
+            if (Files.size(path) == 0) {
+                Files.delete(path);
+                removed = true;
+            }
+        }
+        this.segmentIndex = indexOf(last);
+        this.segment = FileChannel.open(last, StandardOpenOption.WRITE);
+        try {
+            long valid = read(last, true, null);
+            if (segment.size() > valid) {
+                segment.truncate(valid);
+                segment.force(false);
+            }
+            segment.position(valid);
+            this.segmentBytes = valid;
+        } catch (IOException e) {
+            segment.close();
+            throw e;
+        }
+        if (removed) {
+            syncDirectory();
+        }
+    }
+
+    /**
+     * Записывает письмо в журнал и возвращается, когда запись на диске
+     */
+    public void append(Mail<?> mail) {
+        appendAll(Collections.singletonList(mail));
+    }
+
+    /**
+     * Записывает пачку писем подряд и возвращается, когда все они на диске. На всю пачку нужен один fsync.
+     */
+    public void appendAll(List<? extends Mail<?>> mails) {
+        if (mails.isEmpty()) {
+            return;
+        }
+        List<ByteBuffer> records = new ArrayList<>(mails.size());
+        for (Mail<?> mail : mails) {
+            records.add(encode(mail));
+        }
+        long sequence;
+        synchronized (writeLock) {
+            checkNotFailed();
+            try {
+                for (ByteBuffer record : records) {
+                    int length = record.remaining();
+                    if (segmentBytes > 0 && segmentBytes + length > segmentSize) {
+                        rotate();
+                    }
+                    while (record.hasRemaining()) {
+                        segment.write(record);
+                    }
+                    segmentBytes += length;
+                }
+            } catch (IOException e) {
+                failure = e;
+                throw new UncheckedIOException(e);
+            }
+            written += records.size();
+            sequence = written;
+        }
+        try {
+            sync(sequence);
+        } catch (IOException e) {
+            synchronized (writeLock) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Передает в consumer все записи журнала в порядке записи
+     *
+     * @return количество прочитанных записей
+     */
+    public long replay(Consumer<? super Mail<?>> consumer) throws IOException {
+        long[] count = new long[1];
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            read(segments.get(i), i == segments.size() - 1, mail -> {
+                consumer.accept(mail);
+                count[0]++;
+            });
+        }
+        return count[0];
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            try {
+                if (failure == null) {
+                    segment.force(false);
+                }
+            } finally {
+                segment.close();
+            }
+        }
+    }
+
+    private void sync(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (durable >= sequence) {
+                return;
+            }
+            long target;
+            FileChannel channel;
+            synchronized (writeLock) {
+                target = written;
+                channel = segment;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Сегмент закрыли при переходе на новый или при ошибке, перед переходом он был сброшен на диск
+                checkNotFailed();
+            }
+            durable = target;
+        }
+    }
+
+    private void rotate() throws IOException {
+        segment.force(false);
+        segment.close();
+        segment = openSegment(++segmentIndex);
+        segmentBytes = 0;
+    }
+
+    private FileChannel openSegment(long index) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, index, SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            syncDirectory();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Сбрасывает на диск сам каталог, чтобы созданные и удаленные файлы сегментов пережили падение
+     */
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows не открывает каталоги как файлы, там записи каталога и так сохраняются вместе с файлом
+        }
+    }
+
+    private void checkNotFailed() {
+        synchronized (writeLock) {
+            if (failure != null) {
+                throw new UncheckedIOException("Mail log failed, no more records can be written", failure);
+            }
+        }
+    }
+
+    /**
+     * Читает записи сегмента и передает их в consumer (если он не null)
+     *
+     * @param last - последний ли это сегмент: только в нем допустимо повреждение хвоста
+     * @return длина неповрежденной части сегмента
+     * @throws IOException если сегмент поврежден не в хвосте
+     */
+    private static long read(Path path, boolean last, Consumer<? super Mail<?>> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                Mail<?> mail = readRecord(buffer);
+                if (mail == null) {
+                    if (last && isTornTail(buffer, start)) {
+                        return start;
+                    }
+                    throw new IOException("Corrupted record at offset " + start + " of " + path);
+                }
+                if (consumer != null) {
+                    consumer.accept(mail);
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Похожа ли поврежденная запись с позиции start на прерванную запись в конце файла: после нее нет ни одной
+     * записи с верной CRC. Если такая запись есть, то повреждена середина файла, и отрезать ее вместе
+     * с подтвержденными записями нельзя.
+     */
+    private static boolean isTornTail(ByteBuffer buffer, int start) {
+        for (int i = start + 1; i <= buffer.limit() - HEADER_SIZE; i++) {
+            if (hasValidChecksum(buffer, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Помещается ли запись с позиции start в буфер и совпадает ли CRC ее тела
+     */
+    private static boolean hasValidChecksum(ByteBuffer buffer, int start) {
+        if (buffer.limit() - start < HEADER_SIZE) {
+            return false;
+        }
+        int bodyLength = buffer.getInt(start);
+        if (bodyLength <= 0 || bodyLength > buffer.limit() - start - HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.limit(start + HEADER_SIZE + bodyLength);
+        body.position(start + HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == buffer.getInt(start + Integer.BYTES);
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(result::add);
+        }
+        // Номера дополнены нулями, поэтому лексикографический порядок совпадает с порядком записи
+        Collections.sort(result);
+        return result;
+    }
+
+    private static long indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static ByteBuffer encode(Mail<?> mail) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            out.writeInt(0);
+            if (mail instanceof Salary) {
+                out.writeByte(SALARY);
+                writeString(out, mail.getRecipient());
+                writeString(out, mail.getSender());
+                out.writeLong(((Salary) mail).getAmount());
+            } else if (mail instanceof MailMessage) {
+                out.writeByte(MESSAGE);
+                writeString(out, mail.getRecipient());
+                writeString(out, mail.getSender());
+                writeString(out, ((MailMessage) mail).getText());
+            } else {
+                throw new IllegalArgumentException("Unsupported mail type: " + mail.getClass().getName());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int bodyLength = record.remaining() - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, bodyLength);
+        record.putInt(0, bodyLength);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * Читает следующую запись или возвращает null, если запись недописана или повреждена
+     */
+    private static Mail<?> readRecord(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (!hasValidChecksum(buffer, start)) {
+            return null;
+        }
+        int end = start + HEADER_SIZE + buffer.getInt(start);
+        ByteBuffer body = buffer.duplicate();
+        body.limit(end);
+        body.position(start + HEADER_SIZE);
+        buffer.position(end);
+        try {
+            byte kind = body.get();
+            String recipient = readString(body);
+            String sender = readString(body);
+            if (kind == SALARY) {
+                return new Salary(recipient, sender, body.getLong());
+            }
+            return new MailMessage(recipient, sender, readString(body));
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        while ((length & ~0x7F) != 0) {
+            out.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.writeByte(length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -3,6 +3,13 @@ package ru.mail.polis.homework.collections.mail;
 /**
  * 1 балл
  */
-public class MailMessage {
+public class MailMessage extends Mail<String> {
 
+    public MailMessage(String recipient, String sender, String text) {
+        super(recipient, sender, text);
+    }
+
+    public String getText() {
+        return getContent();
+    }
 }
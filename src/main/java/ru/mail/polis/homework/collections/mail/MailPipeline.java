@@ -0,0 +1,218 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Конвейер загрузки писем в {@link MailService} с ограниченной очередью.
+ *
+ * Производители кладут письма через {@link #submit(Mail)}. Если потребители не успевают и очередь заполнена,
+ * submit блокируется - так работает обратное давление, и память не растет без ограничений. Потребители
+ * забирают письма пачками до batchSize штук и передают их в {@link MailService#acceptAll(List)}.
+ *
+ * Если обработка пачки бросила исключение, конвейер запоминает первую ошибку и перестает обрабатывать письма:
+ * потребители дальше только освобождают очередь, чтобы производитель не заблокировался навсегда,
+ * submit и offer бросают {@link CompletionException}, close тоже бросает ее после остановки потребителей.
+ *
+ * Метрики ({@link #getMetrics()}): сколько писем обработано, текущая и максимальная глубина очереди,
+ * пропускная способность с момента запуска.
+ *
+ * @param <T> - тип писем
+ */
+public class MailPipeline<T extends Mail<?>> implements AutoCloseable {
+
+    private static final long POLL_TIMEOUT_MILLIS = 50;
+
+    private final MailService<T> service;
+    private final BlockingQueue<T> queue;
+    private final int batchSize;
+    private final List<Thread> consumers;
+    private final LongAdder processed = new LongAdder();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final long startNanos = System.nanoTime();
+
+    private volatile boolean closed;
+    private volatile long finishNanos;
+
+    public MailPipeline(MailService<T> service, int queueCapacity, int batchSize, int consumers) {
+        if (queueCapacity <= 0 || batchSize <= 0 || consumers <= 0) {
+            throw new IllegalArgumentException("queueCapacity, batchSize and consumers must be positive");
+        }
+        this.service = service;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.consumers = new ArrayList<>(consumers);
+        for (int i = 0; i < consumers; i++) {
+            Thread thread = new Thread(this::consume, "mail-pipeline-" + i);
+            thread.setDaemon(true);
+            this.consumers.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Кладет письмо в очередь, ожидая свободного места, если потребители не успевают
+     */
+    public void submit(T mail) throws InterruptedException {
+        checkOpen();
+        queue.put(mail);
+        updateMaxDepth();
+    }
+
+    /**
+     * Кладет письмо в очередь, ожидая свободного места не дольше timeout
+     *
+     * @return false, если место так и не освободилось
+     */
+    public boolean offer(T mail, long timeout, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        boolean added = queue.offer(mail, timeout, unit);
+        if (added) {
+            updateMaxDepth();
+        }
+        return added;
+    }
+
+    /**
+     * Перестает принимать письма, дожидается обработки всего, что уже в очереди, и останавливает потребителей.
+     * Вызывать после того, как все производители закончили submit. Повторный вызов ничего не делает.
+     * Прерывание не отменяет ожидание потребителей, флаг прерывания потока восстанавливается в конце.
+     *
+     * @throws CompletionException если обработка какой-то пачки упала, причина - первая ошибка
+     */
+    @Override
+    public void close() {
+        if (finishNanos != 0) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        for (Thread consumer : consumers) {
+            while (consumer.isAlive()) {
+                try {
+                    consumer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        finishNanos = System.nanoTime();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Первая ошибка обработки или null, если ошибок не было
+     */
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    public Metrics getMetrics() {
+        long end = finishNanos == 0 ? System.nanoTime() : finishNanos;
+        return new Metrics(processed.sum(), queue.size(), maxQueueDepth.get(), end - startNanos);
+    }
+
+    private void consume() {
+        List<T> batch = new ArrayList<>(batchSize);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                T first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (failure.get() == null) {
+                    try {
+                        service.acceptAll(batch);
+                        processed.add(batch.size());
+                    } catch (RuntimeException | Error e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkOpen() {
+        checkFailure();
+        if (closed) {
+            throw new IllegalStateException("Pipeline is closed");
+        }
+    }
+
+    private void checkFailure() {
+        Throwable error = failure.get();
+        if (error != null) {
+            throw new CompletionException("Mail processing failed", error);
+        }
+    }
+
+    private void updateMaxDepth() {
+        int depth = queue.size();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * Снимок метрик конвейера
+     */
+    public static class Metrics {
+        private final long processed;
+        private final int queueDepth;
+        private final int maxQueueDepth;
+        private final long elapsedNanos;
+
+        Metrics(long processed, int queueDepth, int maxQueueDepth, long elapsedNanos) {
+            this.processed = processed;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Писем в секунду с момента запуска
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : processed * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("processed=%d, queueDepth=%d, maxQueueDepth=%d, throughput=%.0f/s",
+                    processed, queueDepth, maxQueueDepth, getThroughput());
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Обратный индекс по текстам писем: слово -> номера писем, в которых оно встречается. Сами письма индекс
+ * не хранит: номер выдает {@link #add(String, IntConsumer)}, а найти письмо по номеру - забота хранилища
+ * (см. {@link HeapMailBoxStorage#searchable(RetentionPolicy)}).
+ *
+ * Слово - это последовательность букв и цифр ({@link Character#isLetterOrDigit(char)}) без учета регистра.
+ * Слова запроса разбиваются так же, как тексты: "foo-bar" ищется как письма, в которых есть и foo, и bar.
+ *
+ * Индекс разбит на части (шарды) со своими блокировками, письмо попадает в шард потока, который его добавляет,
+ * поэтому добавления из разных потоков не ждут друг друга. Номера писем общие и выдаются под блокировкой шарда,
+ * поэтому внутри шарда они возрастают, а списки номеров растут только в конец и хранятся сжатыми:
+ * разности соседних номеров в varint, обычно 1-2 байта на вхождение слова.
+ *
+ * Запрос фиксирует под блокировкой каждого шарда длины нужных списков, дальше списки читаются без нее: уже
+ * записанные байты не меняются (при росте массив копируется). Результат - ленивый поток номеров: номера
+ * декодируются и пересекаются (AND) или объединяются (OR) по мере чтения, шарды сливаются по возрастанию номеров,
+ * то есть в порядке добавления писем.
+ *
+ * Удаленные письма ({@link #remove()}) остаются в списках, пока их не станет столько же, сколько живых:
+ * тогда списки перестраиваются без номеров, для которых live вернул false.
+ */
+class MailSearchIndex {
+
+    private static final int END = -1;
+    private static final int SHARDS =
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+
+    /**
+     * Меньше удаленных писем списки не перестраиваются
+     */
+    private static final int MIN_COMPACTION = 1024;
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final IntPredicate live;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger removed = new AtomicInteger();
+
+    /**
+     * @param live - есть ли еще письмо с таким номером в хранилище
+     */
+    MailSearchIndex(IntPredicate live) {
+        this.live = live;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Индексирует текст письма. register получает номер письма до того, как номер попадет в списки:
+     * к этому моменту письмо должно стать живым для live, иначе перестройка списков может его выбросить.
+     *
+     * @return номер письма
+     */
+    public int add(String text, IntConsumer register) {
+        Set<String> words = tokenize(text);
+        Shard shard = shards[shard()];
+        int id;
+        synchronized (shard) {
+            id = nextId.getAndIncrement();
+            register.accept(id);
+            for (String word : words) {
+                shard.postings.computeIfAbsent(word, w -> new PostingList()).add(id);
+            }
+        }
+        size.incrementAndGet();
+        return id;
+    }
+
+    /**
+     * Учитывает, что одно из писем удалено из хранилища. Когда удаленных становится не меньше живых,
+     * списки перестраиваются, поэтому в среднем удаление стоит O(1).
+     */
+    public void remove() {
+        int alive = size.decrementAndGet();
+        int dead = removed.incrementAndGet();
+        if (dead >= MIN_COMPACTION && dead >= alive && removed.compareAndSet(dead, 0)) {
+            compact();
+        }
+    }
+
+    /**
+     * Номера писем, в которых есть все слова
+     */
+    public IntStream searchAll(String... words) {
+        return search(words, true);
+    }
+
+    /**
+     * Номера писем, в которых есть хотя бы одно из слов
+     */
+    public IntStream searchAny(String... words) {
+        return search(words, false);
+    }
+
+    /**
+     * Количество проиндексированных и еще не удаленных писем
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private IntStream search(String[] words, boolean all) {
+        if (words.length == 0) {
+            throw new IllegalArgumentException("At least one word is required");
+        }
+        List<Set<String>> queries = new ArrayList<>(words.length);
+        for (String word : words) {
+            Set<String> tokens = tokenize(word);
+            if (!tokens.isEmpty()) {
+                queries.add(tokens);
+            } else if (all) {
+                return IntStream.empty();
+            }
+        }
+        List<Cursor> found = new ArrayList<>(SHARDS);
+        for (Shard shard : shards) {
+            Cursor cursor;
+            synchronized (shard) {
+                cursor = shard.cursor(queries, all);
+            }
+            if (cursor != null) {
+                found.add(cursor);
+            }
+        }
+        if (found.isEmpty()) {
+            return IntStream.empty();
+        }
+        Cursor cursor = found.size() == 1 ? found.get(0) : new OrCursor(found.toArray(new Cursor[0]));
+        Spliterator.OfInt ids = Spliterators.spliteratorUnknownSize(new CursorIterator(cursor),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.intStream(ids, false);
+    }
+
+    private void compact() {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (Iterator<Map.Entry<String, PostingList>> it = shard.postings.entrySet().iterator();
+                     it.hasNext(); ) {
+                    Map.Entry<String, PostingList> entry = it.next();
+                    PostingList compacted = entry.getValue().filter(live);
+                    if (compacted.length == 0) {
+                        it.remove();
+                    } else {
+                        entry.setValue(compacted);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int shard() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (SHARDS - 1);
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> words = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Часть индекса. Все поля меняются только под блокировкой шарда
+     */
+    private static class Shard {
+        private final Map<String, PostingList> postings = new HashMap<>();
+
+        /**
+         * Курсор по номерам шарда, подходящим под запрос, или null, если таких точно нет.
+         * Каждое слово запроса - это пересечение его частей.
+         */
+        Cursor cursor(List<Set<String>> queries, boolean all) {
+            List<Cursor> cursors = new ArrayList<>(queries.size());
+            for (Set<String> tokens : queries) {
+                Cursor cursor = intersect(tokens);
+                if (cursor != null) {
+                    cursors.add(cursor);
+                } else if (all) {
+                    return null;
+                }
+            }
+            if (cursors.isEmpty()) {
+                return null;
+            }
+            Cursor[] found = cursors.toArray(new Cursor[0]);
+            return found.length == 1 ? found[0] : all ? new AndCursor(found) : new OrCursor(found);
+        }
+
+        private Cursor intersect(Set<String> tokens) {
+            Cursor[] cursors = new Cursor[tokens.size()];
+            int count = 0;
+            for (String token : tokens) {
+                PostingList list = postings.get(token);
+                if (list == null) {
+                    return null;
+                }
+                cursors[count++] = new PostingCursor(list.bytes, list.length);
+            }
+            return count == 1 ? cursors[0] : new AndCursor(cursors);
+        }
+    }
+
+    /**
+     * Возрастающие номера писем, сжатые как разности в varint
+     */
+    private static class PostingList {
+        private byte[] bytes = new byte[8];
+        private int length;
+        private int last = -1;
+
+        void add(int id) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length << 1);
+            }
+            int delta = id - last;
+            while ((delta & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+            last = id;
+        }
+
+        /**
+         * Новый список только с номерами, для которых keep вернул true. Старый список не меняется,
+         * поэтому курсоры, которые его уже читают, не замечают перестройки.
+         */
+        PostingList filter(IntPredicate keep) {
+            PostingList result = new PostingList();
+            PostingCursor cursor = new PostingCursor(bytes, length);
+            for (int id = cursor.next(); id != END; id = cursor.next()) {
+                if (keep.test(id)) {
+                    result.add(id);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Возрастающая последовательность номеров; {@link #END}, когда номера закончились
+     */
+    private interface Cursor {
+        int next();
+
+        /**
+         * Первый номер, не меньший target
+         */
+        default int advance(int target) {
+            int id;
+            do {
+                id = next();
+            } while (id != END && id < target);
+            return id;
+        }
+    }
+
+    private static class PostingCursor implements Cursor {
+        private final byte[] bytes;
+        private final int length;
+        private int position;
+        private int current = -1;
+
+        PostingCursor(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        @Override
+        public int next() {
+            if (position == length) {
+                return END;
+            }
+            int delta = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                delta |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            current += delta;
+            return current;
+        }
+    }
+
+    private static class AndCursor implements Cursor {
+        private final Cursor[] cursors;
+
+        AndCursor(Cursor[] cursors) {
+            this.cursors = cursors;
+        }
+
+        @Override
+        public int next() {
+            int candidate = cursors[0].next();
+            int agreed = 1;
+            for (int i = 1; candidate != END && agreed < cursors.length; i = (i + 1) % cursors.length) {
+                int id = cursors[i].advance(candidate);
+                if (id == candidate) {
+                    agreed++;
+                } else {
+                    candidate = id;
+                    agreed = 1;
+                }
+            }
+            return candidate;
+        }
+    }
+
+    private static class OrCursor implements Cursor {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> Integer.compare(a.id, b.id));
+        private int last = END;
+
+        OrCursor(Cursor[] cursors) {
+            for (Cursor cursor : cursors) {
+                int id = cursor.next();
+                if (id != END) {
+                    heads.add(new Head(cursor, id));
+                }
+            }
+        }
+
+        @Override
+        public int next() {
+            while (!heads.isEmpty()) {
+                Head head = heads.poll();
+                int id = head.id;
+                head.id = head.cursor.next();
+                if (head.id != END) {
+                    heads.add(head);
+                }
+                if (id != last) {
+                    last = id;
+                    return id;
+                }
+            }
+            return END;
+        }
+
+        private static class Head {
+            private final Cursor cursor;
+            private int id;
+
+            Head(Cursor cursor, int id) {
+                this.cursor = cursor;
+                this.id = id;
+            }
+        }
+    }
+
+    private static class CursorIterator implements PrimitiveIterator.OfInt {
+        private final Cursor cursor;
+        private int next;
+
+        CursorIterator(Cursor cursor) {
+            this.cursor = cursor;
+            this.next = cursor.next();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != END;
+        }
+
+        @Override
+        public int nextInt() {
+            if (next == END) {
+                throw new NoSuchElementException();
+            }
+            int result = next;
+            next = cursor.next();
+            return result;
+        }
+    }
+}
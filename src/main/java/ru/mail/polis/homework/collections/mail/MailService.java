@@ -1,9 +1,15 @@
 package ru.mail.polis.homework.collections.mail;
 
 
+import ru.mail.polis.homework.collections.ConcurrentPopularity;
+
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Нужно создать сервис, который умеет обрабатывать письма и зарплату.
@@ -12,24 +18,98 @@ import java.util.function.Consumer;
  *
  * В реализации нигде не должно быть классов Object и коллекций без типа. Используйте дженерики.
  * Всего 7 баллов за пакет mail
+ *
+ * Сервис потокобезопасный: accept можно вызывать из многих потоков одновременно. Письма хранит
+ * {@link MailBoxStorage}: по умолчанию {@link HeapMailBoxStorage} с неблокирующим буфером на каждого получателя
+ * (с ограничениями {@link RetentionPolicy} ящики пополняются под блокировкой ящика), для больших объемов -
+ * {@link OffHeapMailBoxStorage}.
+ *
+ * Счетчики отправителей и получателей обновляются в accept, поэтому самые популярные отправитель и получатель
+ * возвращаются за O(1), без обхода почтового ящика. Так же при каждой зарплате обновляются сводки по
+ * получателю и отправителю ({@link SalaryStats}) и рейтинг самых богатых получателей.
+ * Счетчики и сводки не зависят от хранилища: письма, удаленные по {@link RetentionPolicy}, в них учтены.
+ *
+ * Поиск писем по словам делает хранилище, если умеет: например, {@link HeapMailBoxStorage#searchable()}
+ * ведет обратный индекс по письмам, которые в нем лежат, и не просматривает почтовые ящики.
+ *
+ * @param <T> - тип обрабатываемых писем
  */
-public class MailService implements Consumer {
+public class MailService<T extends Mail<?>> implements Consumer<T> {
+
+    private final MailBoxStorage<T> storage;
+    private final MailLog log;
+    private final ConcurrentPopularity<String> senders = new ConcurrentPopularity<>();
+    private final ConcurrentPopularity<String> recipients = new ConcurrentPopularity<>();
+    private final SalaryAggregates salaries = new SalaryAggregates();
+
+    public MailService() {
+        this(new HeapMailBoxStorage<>());
+    }
+
+    public MailService(MailBoxStorage<T> storage) {
+        this(storage, null);
+    }
+
+    /**
+     * Сервис, который перед обработкой каждого письма записывает его в журнал: accept возвращается только
+     * после того, как письмо на диске, и после падения его можно восстановить через {@link #recover}.
+     */
+    public MailService(MailBoxStorage<T> storage, MailLog log) {
+        this.storage = storage;
+        this.log = log;
+    }
+
+    /**
+     * Восстанавливает сервис из журнала. Новые письма этого сервиса продолжают писаться в тот же журнал.
+     */
+    public static MailService<Mail<?>> recover(MailLog log, MailBoxStorage<Mail<?>> storage) throws IOException {
+        MailService<Mail<?>> service = new MailService<>(storage, log);
+        log.replay(service::apply);
+        return service;
+    }
 
     /**
      * С помощью этого метода почтовый сервис обрабатывает письма и зарплаты
      * 1 балл
      */
     @Override
-    public void accept(Object o) {
+    public void accept(T mail) {
+        if (log != null) {
+            log.append(mail);
+        }
+        apply(mail);
+    }
+
+    /**
+     * Обрабатывает пачку писем. Если у сервиса есть журнал, пачка записывается в него целиком
+     * и подтверждается одним fsync, а не fsync на каждое письмо, как в {@link #accept(Mail)}.
+     */
+    public void acceptAll(List<? extends T> mails) {
+        if (log != null) {
+            log.appendAll(mails);
+        }
+        for (T mail : mails) {
+            apply(mail);
+        }
+    }
 
+    private void apply(T mail) {
+        storage.add(mail);
+        senders.increment(mail.getSender());
+        recipients.increment(mail.getRecipient());
+        if (mail instanceof Salary) {
+            salaries.add((Salary) mail);
+        }
     }
 
     /**
      * Метод возвращает мапу получатель -> все объекты которые пришли к этому получателю через данный почтовый сервис
      * 1 балл
+     *
+     * Возвращается снимок: письма, пришедшие после вызова, в него не попадут.
      */
-    public Map<String, List> getMailBox() {
-        return null;
+    public Map<String, List<T>> getMailBox() {
+        return storage.getMailBox();
     }
 
     /**
@@ -37,7 +117,7 @@ public class MailService implements Consumer {
      * 1 балл
      */
     public String getPopularSender() {
-        return null;
+        return senders.getMostPopular();
     }
 
     /**
@@ -45,14 +125,107 @@ public class MailService implements Consumer {
      * 1 балл
      */
     public String getPopularRecipient() {
-        return null;
+        return recipients.getMostPopular();
+    }
+
+    /**
+     * Сколько писем отправил sender
+     */
+    public long getSenderCount(String sender) {
+        return senders.get(sender);
+    }
+
+    /**
+     * Сколько писем получил recipient
+     */
+    public long getRecipientCount(String recipient) {
+        return recipients.get(recipient);
+    }
+
+    /**
+     * Снимок счетчиков отправителей (нужен, чтобы объединять статистику нескольких сервисов)
+     */
+    Map<String, Long> getSenderCounts() {
+        return senders.snapshot();
+    }
+
+    /**
+     * Сумма, количество и максимум зарплат, полученных recipient, за O(1)
+     */
+    public SalaryStats getRecipientSalaryStats(String recipient) {
+        return salaries.getRecipientStats(recipient);
+    }
+
+    /**
+     * Сумма, количество и максимум зарплат, выплаченных sender, за O(1)
+     */
+    public SalaryStats getSenderSalaryStats(String sender) {
+        return salaries.getSenderStats(sender);
+    }
+
+    /**
+     * До n получателей с наибольшей суммой полученных зарплат, по убыванию суммы
+     */
+    public List<String> getRichestRecipients(int n) {
+        return salaries.getRichestRecipients(n);
+    }
+
+    /**
+     * Письма, в тексте которых есть все слова (без учета регистра), в порядке обработки.
+     * Поток ленивый: письма находятся по мере чтения.
+     *
+     * @throws UnsupportedOperationException если хранилище не умеет искать
+     */
+    public Stream<MailMessage> searchAll(String... words) {
+        return storage.searchAll(words);
+    }
+
+    /**
+     * Письма, в тексте которых есть хотя бы одно из слов (без учета регистра), в порядке обработки
+     *
+     * @throws UnsupportedOperationException если хранилище не умеет искать
+     */
+    public Stream<MailMessage> searchAny(String... words) {
+        return storage.searchAny(words);
     }
 
     /**
      * Метод должен заставить обработать service все mails.
      * 1 балл
+     *
+     * Письма раздаются потокам общего {@link ForkJoinPool}.
      */
-    public static void process(MailService service, List mails) {
+    public static <T extends Mail<?>> void process(MailService<T> service, List<? extends T> mails) {
+        mails.parallelStream().forEach(service);
+    }
 
+    /**
+     * То же, что {@link #process(MailService, List)}, но письма обрабатываются потоками переданного пула
+     */
+    public static <T extends Mail<?>> void process(MailService<T> service, List<? extends T> mails,
+                                                   ForkJoinPool pool) {
+        pool.submit(() -> mails.parallelStream().forEach(service)).join();
+    }
+
+    /**
+     * Обрабатывает поток писем через {@link MailPipeline}: письма читаются из mails в ограниченную очередь
+     * и обрабатываются пачками ({@link #acceptAll(List)}) несколькими потоками. Если потребители не успевают,
+     * чтение mails приостанавливается, поэтому весь поток писем в памяти не оказывается.
+     *
+     * @return метрики обработки
+     * @throws java.util.concurrent.CompletionException если обработка пачки упала, причина - первая ошибка
+     */
+    public static <T extends Mail<?>> MailPipeline.Metrics process(MailService<T> service, Iterator<? extends T> mails,
+                                                                   int queueCapacity, int batchSize, int consumers)
+            throws InterruptedException {
+        MailPipeline<T> pipeline = new MailPipeline<>(service, queueCapacity, batchSize, consumers);
+        try {
+            while (mails.hasNext()) {
+                pipeline.submit(mails.next());
+            }
+        } finally {
+            pipeline.close();
+        }
+        return pipeline.getMetrics();
     }
 }
@@ -0,0 +1,241 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Колоночное хранилище писем вне кучи. Подходит для {@link MailMessage} и {@link Salary}, поэтому им можно
+ * заменить хранилище в куче и у {@code MailService<MailMessage>}, и у {@code MailService<Salary>},
+ * и у {@code MailService<Mail<?>>}.
+ *
+ * Каждое письмо - это строка в колонках, которые лежат в direct-буферах:
+ * - kind (1 байт): письмо или зарплата;
+ * - sender (4 байта): номер отправителя в словаре имен;
+ * - payload (8 байт): сумма зарплаты или (смещение << 32 | длина) текста письма в арене.
+ * Тексты писем хранятся подряд в арене в UTF-8. Имена отправителей и получателей хранятся в словаре
+ * один раз, сколько бы писем с ними ни было. В куче остаются только словарь и номера строк для каждого
+ * получателя (int на письмо).
+ *
+ * getMailBox не создает объекты писем заранее: списки получателей - это ленивые представления, письмо
+ * собирается из колонок при обращении к элементу списка. Размер каждого списка фиксируется в момент вызова.
+ *
+ * Запись идет под одной блокировкой. Чтение блокировку не берет: строки и тексты только дописываются,
+ * а при росте колонки копируются в новые буферы, поэтому однажды записанные байты больше не меняются.
+ * Строка становится видна читателям, только когда ее номер опубликован в списке получателя (volatile size),
+ * а текущие буферы публикуются через volatile-ссылку на {@link Columns}. Каждая колонка ограничена 2 ГБ
+ * (ограничение {@link ByteBuffer}).
+ *
+ * @param <T> - тип писем
+ */
+public class OffHeapMailBoxStorage<T extends Mail<?>> implements MailBoxStorage<T> {
+
+    private static final byte MESSAGE = 0;
+    private static final byte SALARY = 1;
+
+    private static final int INITIAL_ROWS = 1024;
+    private static final int INITIAL_ARENA = 64 * 1024;
+    private static final int INITIAL_NAMES = 64;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final Map<String, RowList> rowsByRecipient = new ConcurrentHashMap<>();
+
+    /**
+     * Текущие буферы колонок, меняются только под блокировкой записи
+     */
+    private volatile Columns columns = new Columns(ByteBuffer.allocateDirect(INITIAL_ROWS),
+            ByteBuffer.allocateDirect(INITIAL_ROWS * Integer.BYTES),
+            ByteBuffer.allocateDirect(INITIAL_ROWS * Long.BYTES),
+            ByteBuffer.allocateDirect(INITIAL_ARENA), new String[INITIAL_NAMES]);
+
+    private int nameCount;
+    private int rows;
+    private int arenaSize;
+
+    @Override
+    public synchronized void add(T mail) {
+        Columns current = columns;
+        ByteBuffer arena = current.arena;
+        long payload;
+        byte kind;
+        if (mail instanceof Salary) {
+            kind = SALARY;
+            payload = ((Salary) mail).getAmount();
+        } else if (mail instanceof MailMessage) {
+            kind = MESSAGE;
+            byte[] text = ((MailMessage) mail).getText().getBytes(StandardCharsets.UTF_8);
+            arena = ensureCapacity(arena, (long) arenaSize + text.length);
+            ByteBuffer target = arena.duplicate();
+            target.position(arenaSize);
+            target.put(text);
+            payload = ((long) arenaSize << 32) | text.length;
+            arenaSize += text.length;
+        } else {
+            throw new IllegalArgumentException("Unsupported mail type: " + mail.getClass().getName());
+        }
+
+        ByteBuffer kinds = ensureCapacity(current.kinds, rows + 1L);
+        ByteBuffer senders = ensureCapacity(current.senders, (rows + 1L) * Integer.BYTES);
+        ByteBuffer payloads = ensureCapacity(current.payloads, (rows + 1L) * Long.BYTES);
+        kinds.put(rows, kind);
+        senders.putInt(rows * Integer.BYTES, intern(mail.getSender()));
+        payloads.putLong(rows * Long.BYTES, payload);
+        int recipientId = intern(mail.getRecipient());
+        String[] names = columns.names;
+        if (kinds != current.kinds || senders != current.senders || payloads != current.payloads
+                || arena != current.arena || names != current.names) {
+            columns = new Columns(kinds, senders, payloads, arena, names);
+        }
+
+        // Публикуем строку последней: после этого ее байты и буферы видны читателям
+        rowsByRecipient.computeIfAbsent(names[recipientId], r -> new RowList()).add(rows);
+        rows++;
+    }
+
+    @Override
+    public Map<String, List<T>> getMailBox() {
+        Map<String, List<T>> result = new HashMap<>();
+        rowsByRecipient.forEach((recipient, rowList) -> {
+            int size = rowList.size;
+            result.put(recipient, new RecipientView(recipient, rowList.rows, size));
+        });
+        return result;
+    }
+
+    /**
+     * Количество писем в хранилище
+     */
+    public synchronized int size() {
+        return rows;
+    }
+
+    /**
+     * Байты вне кучи, занятые колонками и текстами
+     */
+    public synchronized long offHeapBytes() {
+        return (long) rows * (1 + Integer.BYTES + Long.BYTES) + arenaSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T read(String recipient, int row) {
+        Columns current = columns;
+        String sender = current.names[current.senders.getInt(row * Integer.BYTES)];
+        long payload = current.payloads.getLong(row * Long.BYTES);
+        if (current.kinds.get(row) == SALARY) {
+            return (T) new Salary(recipient, sender, payload);
+        }
+        byte[] text = new byte[(int) payload];
+        ByteBuffer source = current.arena.duplicate();
+        source.position((int) (payload >>> 32));
+        source.get(text);
+        return (T) new MailMessage(recipient, sender, new String(text, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Возвращает номер имени в словаре. Новое имя записывается в массив имен до публикации строки,
+     * массив при росте копируется и публикуется вместе с колонками.
+     */
+    private int intern(String name) {
+        Integer id = dictionary.get(name);
+        if (id == null) {
+            id = nameCount;
+            String[] names = columns.names;
+            if (id == names.length) {
+                Columns current = columns;
+                names = Arrays.copyOf(names, id << 1);
+                columns = new Columns(current.kinds, current.senders, current.payloads, current.arena, names);
+            }
+            names[id] = name;
+            nameCount++;
+            dictionary.put(name, id);
+        }
+        return id;
+    }
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, long required) {
+        if (required <= buffer.capacity()) {
+            return buffer;
+        }
+        if (required > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap column is full");
+        }
+        long newCapacity = Math.max(required, Math.min(Integer.MAX_VALUE, (long) buffer.capacity() << 1));
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) newCapacity);
+        ByteBuffer source = buffer.duplicate();
+        source.clear();
+        grown.put(source);
+        grown.clear();
+        return grown;
+    }
+
+    /**
+     * Буферы колонок и массив имен. Ссылки неизменяемые, новый объект создается, когда что-то из них выросло.
+     */
+    private static class Columns {
+        private final ByteBuffer kinds;
+        private final ByteBuffer senders;
+        private final ByteBuffer payloads;
+        private final ByteBuffer arena;
+        private final String[] names;
+
+        Columns(ByteBuffer kinds, ByteBuffer senders, ByteBuffer payloads, ByteBuffer arena, String[] names) {
+            this.kinds = kinds;
+            this.senders = senders;
+            this.payloads = payloads;
+            this.arena = arena;
+            this.names = names;
+        }
+    }
+
+    /**
+     * Номера строк одного получателя. Пишет только владелец блокировки записи, читатели сначала читают size,
+     * потом rows: в массиве, прочитанном после size, первые size элементов уже записаны.
+     */
+    private static class RowList {
+        private volatile int[] rows = new int[4];
+        private volatile int size;
+
+        void add(int row) {
+            int[] current = rows;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size << 1);
+                rows = current;
+            }
+            current[size] = row;
+            size++;
+        }
+    }
+
+    /**
+     * Ленивый список писем получателя. Массив строк только дописывается (а при росте копируется),
+     * поэтому первые size элементов в нем не меняются.
+     */
+    private class RecipientView extends AbstractList<T> {
+        private final String recipient;
+        private final int[] rows;
+        private final int size;
+
+        RecipientView(String recipient, int[] rows, int size) {
+            this.recipient = recipient;
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            return read(recipient, rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.time.Duration;
+
+/**
+ * Ограничения на размер почтовых ящиков {@link HeapMailBoxStorage}:
+ * - не больше maxPerRecipient писем у одного получателя (старые письма удаляются);
+ * - письма старше maxAge удаляются;
+ * - всего не больше maxTotal писем: при превышении целиком удаляются ящики получателей, которым дольше всех
+ * ничего не приходило (LRU).
+ *
+ * Политика неизменяемая, ограничения добавляются методами with*.
+ */
+public class RetentionPolicy {
+
+    public static final RetentionPolicy UNLIMITED = new RetentionPolicy(Integer.MAX_VALUE, null, Long.MAX_VALUE);
+
+    private final int maxPerRecipient;
+    private final Duration maxAge;
+    private final long maxTotal;
+
+    private RetentionPolicy(int maxPerRecipient, Duration maxAge, long maxTotal) {
+        this.maxPerRecipient = maxPerRecipient;
+        this.maxAge = maxAge;
+        this.maxTotal = maxTotal;
+    }
+
+    public RetentionPolicy withMaxPerRecipient(int maxPerRecipient) {
+        if (maxPerRecipient <= 0) {
+            throw new IllegalArgumentException("maxPerRecipient must be positive: " + maxPerRecipient);
+        }
+        return new RetentionPolicy(maxPerRecipient, maxAge, maxTotal);
+    }
+
+    public RetentionPolicy withMaxAge(Duration maxAge) {
+        if (maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("maxAge must be positive: " + maxAge);
+        }
+        return new RetentionPolicy(maxPerRecipient, maxAge, maxTotal);
+    }
+
+    public RetentionPolicy withMaxTotal(long maxTotal) {
+        if (maxTotal <= 0) {
+            throw new IllegalArgumentException("maxTotal must be positive: " + maxTotal);
+        }
+        return new RetentionPolicy(maxPerRecipient, maxAge, maxTotal);
+    }
+
+    public int getMaxPerRecipient() {
+        return maxPerRecipient;
+    }
+
+    /**
+     * Максимальный возраст письма или null, если возраст не ограничен
+     */
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public long getMaxTotal() {
+        return maxTotal;
+    }
+
+    boolean hasMaxTotal() {
+        return maxTotal != Long.MAX_VALUE;
+    }
+}
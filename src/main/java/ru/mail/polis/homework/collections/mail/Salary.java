@@ -3,5 +3,13 @@ package ru.mail.polis.homework.collections.mail;
 /**
  * 1 балл
  */
-public class Salary {
+public class Salary extends Mail<Long> {
+
+    public Salary(String recipient, String sender, long amount) {
+        super(recipient, sender, amount);
+    }
+
+    public long getAmount() {
+        return getContent();
+    }
 }
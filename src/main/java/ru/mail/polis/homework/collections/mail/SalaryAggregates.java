@@ -0,0 +1,99 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Суммы, количество и максимум зарплат по получателям и отправителям, которые обновляются при каждой зарплате.
+ *
+ * Запрос сводки - O(1). Для рейтинга самых богатых получателей поддерживается упорядоченное по сумме
+ * множество, обновление в нем - O(log n), первые N получателей - O(N).
+ */
+class SalaryAggregates {
+
+    private static final Comparator<Rank> RICHEST_FIRST = Comparator.comparingLong((Rank rank) -> rank.sum)
+            .reversed()
+            .thenComparing(rank -> rank.name);
+
+    private final ConcurrentHashMap<String, Accumulator> byRecipient = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Accumulator> bySender = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Rank> ranking = new ConcurrentSkipListSet<>(RICHEST_FIRST);
+
+    public void add(Salary salary) {
+        long amount = salary.getAmount();
+        String recipient = salary.getRecipient();
+        Accumulator recipientTotal = accumulator(byRecipient, recipient);
+        synchronized (recipientTotal) {
+            long oldSum = recipientTotal.sum;
+            boolean ranked = recipientTotal.count > 0;
+            recipientTotal.add(amount);
+            if (ranked) {
+                ranking.remove(new Rank(recipient, oldSum));
+            }
+            ranking.add(new Rank(recipient, recipientTotal.sum));
+        }
+        Accumulator senderTotal = accumulator(bySender, salary.getSender());
+        synchronized (senderTotal) {
+            senderTotal.add(amount);
+        }
+    }
+
+    public SalaryStats getRecipientStats(String recipient) {
+        return stats(byRecipient.get(recipient));
+    }
+
+    public SalaryStats getSenderStats(String sender) {
+        return stats(bySender.get(sender));
+    }
+
+    /**
+     * До n получателей с наибольшей суммой зарплат, по убыванию суммы (при равенстве - по имени)
+     */
+    public List<String> getRichestRecipients(int n) {
+        List<String> result = new ArrayList<>(Math.min(n, 16));
+        for (Iterator<Rank> it = ranking.iterator(); it.hasNext() && result.size() < n; ) {
+            result.add(it.next().name);
+        }
+        return result;
+    }
+
+    private static Accumulator accumulator(ConcurrentHashMap<String, Accumulator> map, String name) {
+        Accumulator accumulator = map.get(name);
+        return accumulator != null ? accumulator : map.computeIfAbsent(name, n -> new Accumulator());
+    }
+
+    private static SalaryStats stats(Accumulator accumulator) {
+        if (accumulator == null) {
+            return SalaryStats.EMPTY;
+        }
+        synchronized (accumulator) {
+            return new SalaryStats(accumulator.sum, accumulator.count, accumulator.max);
+        }
+    }
+
+    private static class Accumulator {
+        private long sum;
+        private long count;
+        private long max;
+
+        void add(long amount) {
+            max = count == 0 ? amount : Math.max(max, amount);
+            sum += amount;
+            count++;
+        }
+    }
+
+    private static class Rank {
+        private final String name;
+        private final long sum;
+
+        Rank(String name, long sum) {
+            this.name = name;
+            this.sum = sum;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ru.mail.polis.homework.collections.mail;
+
+/**
+ * Сводка по зарплатам одного получателя или отправителя: сумма, количество и максимальная выплата
+ */
+public class SalaryStats {
+
+    public static final SalaryStats EMPTY = new SalaryStats(0, 0, 0);
+
+    private final long sum;
+    private final long count;
+    private final long max;
+
+    public SalaryStats(long sum, long count, long max) {
+        this.sum = sum;
+        this.count = count;
+        this.max = max;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Максимальная выплата (0, если выплат не было)
+     */
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "SalaryStats{sum=" + sum + ", count=" + count + ", max=" + max + "}";
+    }
+}
@@ -0,0 +1,261 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Почтовый сервис, разделенный на N независимых частей (шардов) по получателю.
+ *
+ * Каждый шард - это отдельный {@link MailService} со своим однопоточным исполнителем, письмо уходит в шард
+ * hash(получатель) mod N. Общих структур между шардами нет, поэтому загрузка масштабируется по ядрам.
+ * Очередь исполнителя ограничена queueCapacity письмами: если шард не успевает, accept ждет свободного места
+ * (обратное давление), порядок писем внутри шарда сохраняется.
+ *
+ * Если обработка письма бросила исключение, сервис запоминает первую ошибку и больше писем не обрабатывает:
+ * accept, запросы, {@link #awaitPending()} и {@link #close()} бросают {@link CompletionException}
+ * с этой ошибкой в качестве причины.
+ *
+ * Все запросы сначала дожидаются обработки писем, переданных в accept до запроса, поэтому результаты точные:
+ * - почтовый ящик и рейтинг получателей объединяются без конфликтов, так как получатель живет ровно в одном шарде;
+ * - отправитель может писать в разные шарды, поэтому его счетчики суммируются по всем шардам
+ * (это O(количество отправителей)).
+ *
+ * @param <T> - тип писем
+ */
+public class ShardedMailService<T extends Mail<?>> implements Consumer<T>, AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Когда очередь шарда заполнена, поток, который передает письмо, ждет свободного места
+     */
+    private static final RejectedExecutionHandler WAIT_FOR_SPACE = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Sharded mail service is closed");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for shard queue", e);
+        }
+    };
+
+    private final List<MailService<T>> shards;
+    private final List<ExecutorService> executors;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public ShardedMailService(int shardCount) {
+        this(shardCount, HeapMailBoxStorage::new);
+    }
+
+    public ShardedMailService(int shardCount, Supplier<? extends MailBoxStorage<T>> storageFactory) {
+        this(shardCount, DEFAULT_QUEUE_CAPACITY, storageFactory);
+    }
+
+    /**
+     * @param queueCapacity - сколько писем может ждать обработки в каждом шарде
+     */
+    public ShardedMailService(int shardCount, int queueCapacity, Supplier<? extends MailBoxStorage<T>> storageFactory) {
+        if (shardCount <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("shardCount and queueCapacity must be positive");
+        }
+        this.shards = new ArrayList<>(shardCount);
+        this.executors = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new MailService<>(storageFactory.get()));
+            executors.add(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), WAIT_FOR_SPACE));
+        }
+    }
+
+    /**
+     * Передает письмо в шард получателя. Возвращается сразу, если в очереди шарда есть место
+     */
+    @Override
+    public void accept(T mail) {
+        checkFailure();
+        int shard = shardOf(mail.getRecipient());
+        MailService<T> service = shards.get(shard);
+        executors.get(shard).execute(() -> {
+            if (failure.get() != null) {
+                return;
+            }
+            try {
+                service.accept(mail);
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+    }
+
+    /**
+     * Первая ошибка обработки или null, если ошибок не было
+     */
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    public Map<String, List<T>> getMailBox() {
+        awaitPending();
+        Map<String, List<T>> result = new HashMap<>();
+        for (MailService<T> shard : shards) {
+            result.putAll(shard.getMailBox());
+        }
+        return result;
+    }
+
+    public String getPopularSender() {
+        awaitPending();
+        Map<String, Long> total = new HashMap<>();
+        for (MailService<T> shard : shards) {
+            shard.getSenderCounts().forEach((sender, count) -> total.merge(sender, count, Long::sum));
+        }
+        String popular = null;
+        long popularCount = 0;
+        for (Map.Entry<String, Long> entry : total.entrySet()) {
+            if (entry.getValue() > popularCount) {
+                popular = entry.getKey();
+                popularCount = entry.getValue();
+            }
+        }
+        return popular;
+    }
+
+    public String getPopularRecipient() {
+        awaitPending();
+        String popular = null;
+        long popularCount = 0;
+        for (MailService<T> shard : shards) {
+            String candidate = shard.getPopularRecipient();
+            if (candidate != null && shard.getRecipientCount(candidate) > popularCount) {
+                popular = candidate;
+                popularCount = shard.getRecipientCount(candidate);
+            }
+        }
+        return popular;
+    }
+
+    public SalaryStats getRecipientSalaryStats(String recipient) {
+        awaitPending();
+        return shards.get(shardOf(recipient)).getRecipientSalaryStats(recipient);
+    }
+
+    public SalaryStats getSenderSalaryStats(String sender) {
+        awaitPending();
+        long sum = 0;
+        long count = 0;
+        long max = 0;
+        for (MailService<T> shard : shards) {
+            SalaryStats stats = shard.getSenderSalaryStats(sender);
+            if (stats.getCount() > 0) {
+                max = count == 0 ? stats.getMax() : Math.max(max, stats.getMax());
+                sum += stats.getSum();
+                count += stats.getCount();
+            }
+        }
+        return count == 0 ? SalaryStats.EMPTY : new SalaryStats(sum, count, max);
+    }
+
+    /**
+     * Первые n получателей каждого шарда объединяются и сортируются заново
+     */
+    public List<String> getRichestRecipients(int n) {
+        awaitPending();
+        List<String> candidates = new ArrayList<>();
+        Map<String, Long> sums = new HashMap<>();
+        for (MailService<T> shard : shards) {
+            for (String recipient : shard.getRichestRecipients(n)) {
+                candidates.add(recipient);
+                sums.put(recipient, shard.getRecipientSalaryStats(recipient).getSum());
+            }
+        }
+        candidates.sort((a, b) -> {
+            int bySum = Long.compare(sums.get(b), sums.get(a));
+            return bySum != 0 ? bySum : a.compareTo(b);
+        });
+        return new ArrayList<>(candidates.subList(0, Math.min(n, candidates.size())));
+    }
+
+    /**
+     * Раздает письма по шардам и дожидается их обработки
+     */
+    public static <T extends Mail<?>> void process(ShardedMailService<T> service, List<? extends T> mails) {
+        mails.forEach(service);
+        service.awaitPending();
+    }
+
+    /**
+     * Дожидается обработки всех писем, переданных в accept до вызова
+     *
+     * @throws CompletionException если обработка какого-то письма упала
+     */
+    public void awaitPending() {
+        List<Future<?>> barriers = new ArrayList<>(executors.size());
+        for (ExecutorService executor : executors) {
+            barriers.add(executor.submit(() -> {
+            }));
+        }
+        try {
+            for (Future<?> barrier : barriers) {
+                barrier.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shards", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        checkFailure();
+    }
+
+    /**
+     * Дожидается обработки всех переданных писем и останавливает исполнители шардов.
+     * Прерывание не отменяет ожидание, флаг прерывания потока восстанавливается в конце.
+     *
+     * @throws CompletionException если обработка какого-то письма упала
+     */
+    @Override
+    public void close() {
+        executors.forEach(ExecutorService::shutdown);
+        boolean interrupted = false;
+        for (ExecutorService executor : executors) {
+            while (!executor.isTerminated()) {
+                try {
+                    executor.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() {
+        Throwable error = failure.get();
+        if (error != null) {
+            throw new CompletionException("Mail processing failed", error);
+        }
+    }
+
+    private int shardOf(String recipient) {
+        return Math.floorMod(recipient.hashCode(), shards.size());
+    }
+}
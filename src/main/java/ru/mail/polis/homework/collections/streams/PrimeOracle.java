@@ -0,0 +1,155 @@
+package ru.mail.polis.homework.collections.streams;
+
+/**
+ * Быстрая проверка чисел на простоту, когда проверять нужно много чисел.
+ *
+ * Числа до bound проверяются по заранее построенному решету: битовая маска по нечетным числам
+ * (бит i - число 2i + 1), поэтому решето до bound занимает bound / 16 байт, а проверка - одно чтение long.
+ * Решето строится сегментами по {@link #SEGMENT_BITS} бит, чтобы вычеркивание шло в пределах кеша процессора.
+ *
+ * Числа больше bound проверяются детерминированным тестом Миллера-Рабина по основаниям 2, 7 и 61:
+ * этих оснований достаточно для всех чисел меньше 4 759 123 141, то есть для всех int.
+ */
+public class PrimeOracle {
+
+    /**
+     * Граница решета по умолчанию: решето занимает 1 МБ
+     */
+    public static final int DEFAULT_BOUND = 1 << 24;
+
+    private static final int SEGMENT_BITS = 1 << 18;
+    private static final int[] WITNESSES = {2, 7, 61};
+
+    private final int bound;
+
+    /**
+     * Бит i установлен, если число 2i + 1 составное
+     */
+    private final long[] composite;
+
+    /**
+     * @param bound - до какого числа (включительно) строить решето
+     */
+    public PrimeOracle(int bound) {
+        if (bound < 0) {
+            throw new IllegalArgumentException("bound must not be negative: " + bound);
+        }
+        this.bound = bound;
+        this.composite = sieve(bound);
+    }
+
+    /**
+     * Общий экземпляр с границей {@link #DEFAULT_BOUND}, строится при первом обращении
+     */
+    public static PrimeOracle getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public boolean isPrime(int n) {
+        if (n < 3) {
+            return n == 2;
+        }
+        if ((n & 1) == 0) {
+            return false;
+        }
+        if (n <= bound) {
+            int index = n >>> 1;
+            return (composite[index >>> 6] & (1L << index)) == 0;
+        }
+        return millerRabin(n);
+    }
+
+    /**
+     * Проверяет все числа сразу: result[i] == isPrime(numbers[i])
+     */
+    public boolean[] isPrime(int[] numbers) {
+        boolean[] result = new boolean[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            result[i] = isPrime(numbers[i]);
+        }
+        return result;
+    }
+
+    public int getBound() {
+        return bound;
+    }
+
+    private static long[] sieve(int bound) {
+        int maxIndex = bound >>> 1;
+        long[] composite = new long[(maxIndex >>> 6) + 1];
+        composite[0] |= 1L;
+
+        int root = (int) Math.sqrt(bound);
+        boolean[] small = new boolean[root + 1];
+        int[] basePrimes = new int[root + 1];
+        int basePrimeCount = 0;
+        for (int p = 3; p <= root; p += 2) {
+            if (!small[p]) {
+                basePrimes[basePrimeCount++] = p;
+                for (int multiple = p * p; multiple <= root; multiple += 2 * p) {
+                    small[multiple] = true;
+                }
+            }
+        }
+
+        for (long low = 0; low <= maxIndex; low += SEGMENT_BITS) {
+            long high = Math.min(low + SEGMENT_BITS, maxIndex + 1L);
+            long first = 2 * low + 1;
+            for (int i = 0; i < basePrimeCount; i++) {
+                long p = basePrimes[i];
+                long start = Math.max(p * p, (first + p - 1) / p * p);
+                if ((start & 1) == 0) {
+                    start += p;
+                }
+                for (long index = start >>> 1; index < high; index += p) {
+                    composite[(int) (index >>> 6)] |= 1L << index;
+                }
+            }
+        }
+        return composite;
+    }
+
+    private static boolean millerRabin(int n) {
+        int d = n - 1;
+        int s = Integer.numberOfTrailingZeros(d);
+        d >>>= s;
+        for (int witness : WITNESSES) {
+            if (witness % n == 0) {
+                continue;
+            }
+            long x = powMod(witness, d, n);
+            if (x == 1 || x == n - 1) {
+                continue;
+            }
+            boolean composite = true;
+            for (int r = 1; r < s && composite; r++) {
+                x = x * x % n;
+                composite = x != n - 1;
+            }
+            if (composite) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * base^exponent mod modulus. modulus < 2^31, поэтому произведения помещаются в long
+     */
+    private static long powMod(long base, int exponent, int modulus) {
+        long result = 1;
+        base %= modulus;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result = result * base % modulus;
+            }
+            base = base * base % modulus;
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    private static class DefaultHolder {
+        private static final PrimeOracle INSTANCE = new PrimeOracle(DEFAULT_BOUND);
+    }
+}
@@ -4,6 +4,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
 
 public class SimpleStreams {
 
@@ -13,7 +14,15 @@ public class SimpleStreams {
      * 1 балл
      */
     public static boolean isPrime(int n) {
-        return false;
+        return n > 1 && IntStream.rangeClosed(2, (int) Math.sqrt(n)).noneMatch(divisor -> n % divisor == 0);
+    }
+
+    /**
+     * Проверка на простоту сразу многих чисел: result[i] == isPrime(numbers[i]).
+     * Использует общий {@link PrimeOracle}: решето для небольших чисел и тест Миллера-Рабина для остальных.
+     */
+    public static boolean[] isPrime(int[] numbers) {
+        return PrimeOracle.getDefault().isPrime(numbers);
     }
 
     /**
@@ -0,0 +1,292 @@
+package ru.mail.polis.homework.collections.streams;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Счетчик слов для {@link WordFrequency}, который не создает строку на каждое слово.
+ *
+ * Слово собирается в переиспользуемый буфер уже в нижнем регистре и ищется в хеш-таблице с открытой адресацией
+ * прямо по буферу. Копия символов создается только при первой встрече слова, поэтому память выделяется
+ * только на разные слова. Счетчик не потокобезопасный: у каждого потока свой, в конце они сливаются
+ * через {@link #merge(WordCounts)}.
+ */
+class WordCounts {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private char[][] keys = new char[INITIAL_CAPACITY][];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Слова, счетчик которых после {@link #subtract(WordCounts)} стал нулевым. Они занимают слоты,
+     * пока таблица не будет перестроена.
+     */
+    private int zeros;
+
+    private char[] word = new char[32];
+    private int wordLength;
+
+    /**
+     * Считает слова строки: последовательности букв и цифр ({@link Character#isLetterOrDigit(int)})
+     */
+    public void addLine(CharSequence line) {
+        int length = line.length();
+        for (int i = 0; i < length; ) {
+            int codePoint = Character.codePointAt(line, i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                append(codePoint);
+            } else {
+                endWord();
+            }
+        }
+        endWord();
+    }
+
+    /**
+     * Считает слова в байтах UTF-8 от position до limit буфера (позиция буфера не меняется). Некорректные
+     * последовательности байт считаются разделителями. Слово, которое не закончилось в конце буфера,
+     * считается законченным.
+     */
+    public void addUtf8(ByteBuffer bytes) {
+        int limit = bytes.limit();
+        for (int i = bytes.position(); i < limit; ) {
+            int b = bytes.get(i++);
+            int codePoint;
+            if (b >= 0) {
+                codePoint = b;
+            } else if ((b & 0xE0) == 0xC0 && i < limit && isContinuation(bytes.get(i))) {
+                codePoint = (b & 0x1F) << 6 | bytes.get(i++) & 0x3F;
+            } else if ((b & 0xF0) == 0xE0 && i + 1 < limit
+                    && isContinuation(bytes.get(i)) && isContinuation(bytes.get(i + 1))) {
+                codePoint = (b & 0x0F) << 12 | (bytes.get(i++) & 0x3F) << 6 | bytes.get(i++) & 0x3F;
+            } else if ((b & 0xF8) == 0xF0 && i + 2 < limit
+                    && isContinuation(bytes.get(i)) && isContinuation(bytes.get(i + 1))
+                    && isContinuation(bytes.get(i + 2))) {
+                codePoint = (b & 0x07) << 18 | (bytes.get(i++) & 0x3F) << 12 | (bytes.get(i++) & 0x3F) << 6
+                        | bytes.get(i++) & 0x3F;
+            } else {
+                codePoint = -1;
+            }
+            if (Character.isValidCodePoint(codePoint) && Character.isLetterOrDigit(codePoint)) {
+                append(codePoint);
+            } else {
+                endWord();
+            }
+        }
+        endWord();
+    }
+
+    /**
+     * Добавляет символ к текущему слову
+     */
+    void append(int codePoint) {
+        if (wordLength + 2 > word.length) {
+            word = Arrays.copyOf(word, word.length << 1);
+        }
+        wordLength += Character.toChars(Character.toLowerCase(codePoint), word, wordLength);
+    }
+
+    /**
+     * Заканчивает текущее слово и считает его, если оно не пустое
+     */
+    void endWord() {
+        if (wordLength > 0) {
+            add(word, wordLength, hash(word, wordLength), 1);
+            wordLength = 0;
+        }
+    }
+
+    /**
+     * Переносит счетчики other в этот счетчик. Массивы символов слов переиспользуются, а не копируются.
+     *
+     * @return this
+     */
+    public WordCounts merge(WordCounts other) {
+        if (other.size > size) {
+            return other.merge(this);
+        }
+        for (int i = 0; i < other.keys.length; i++) {
+            char[] key = other.keys[i];
+            if (key != null && other.counts[i] != 0) {
+                insert(key, other.hashes[i], other.counts[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Вычитает счетчики other, которые раньше были добавлены в этот счетчик. Слова с нулевым счетчиком
+     * не попадают в {@link #top(int)}, а когда их становится больше половины, таблица перестраивается без них.
+     */
+    public void subtract(WordCounts other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            char[] key = other.keys[i];
+            if (key != null) {
+                int slot = find(key, key.length, other.hashes[i]);
+                if (keys[slot] != null && (counts[slot] -= other.counts[i]) == 0) {
+                    zeros++;
+                }
+            }
+        }
+        if (zeros > size >> 1) {
+            rehash(keys.length);
+        }
+    }
+
+    /**
+     * Количество разных слов
+     */
+    public int size() {
+        return size - zeros;
+    }
+
+    public long get(String word) {
+        char[] chars = word.toCharArray();
+        int slot = find(chars, chars.length, hash(chars, chars.length));
+        return keys[slot] == null ? 0 : counts[slot];
+    }
+
+    /**
+     * До k самых частых слов по убыванию частоты, при равной частоте - в лексикографическом порядке.
+     * Выбор через кучу размера k: O(n log k) вместо сортировки всех слов, строки создаются только для результата.
+     */
+    public List<String> top(int k) {
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k + 1, (a, b) -> compare(b, a));
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && counts[i] != 0) {
+                heap.add(i);
+                if (heap.size() > k) {
+                    heap.poll();
+                }
+            }
+        }
+        List<String> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(new String(keys[heap.poll()]));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Порядок выдачи: слово из слота a раньше слова из слота b
+     */
+    private int compare(int a, int b) {
+        int byCount = Long.compare(counts[b], counts[a]);
+        return byCount != 0 ? byCount : compareChars(keys[a], keys[b]);
+    }
+
+    private void add(char[] chars, int length, int hash, long count) {
+        int slot = find(chars, length, hash);
+        if (keys[slot] != null) {
+            increase(slot, count);
+            return;
+        }
+        keys[slot] = Arrays.copyOf(chars, length);
+        hashes[slot] = hash;
+        counts[slot] = count;
+        grow();
+    }
+
+    private void insert(char[] key, int hash, long count) {
+        int slot = find(key, key.length, hash);
+        if (keys[slot] != null) {
+            increase(slot, count);
+            return;
+        }
+        keys[slot] = key;
+        hashes[slot] = hash;
+        counts[slot] = count;
+        grow();
+    }
+
+    private int find(char[] chars, int length, int hash) {
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != null && (hashes[slot] != hash || !equals(keys[slot], chars, length))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void increase(int slot, long count) {
+        if (counts[slot] == 0) {
+            zeros--;
+        }
+        counts[slot] += count;
+    }
+
+    private void grow() {
+        if (++size > keys.length >> 1) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Перестраивает таблицу с новой емкостью, выбрасывая слова с нулевым счетчиком
+     */
+    private void rehash(int capacity) {
+        char[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        keys = new char[capacity][];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        size = 0;
+        zeros = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null && oldCounts[i] != 0) {
+                int slot = find(oldKeys[i], oldKeys[i].length, oldHashes[i]);
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+                size++;
+            }
+        }
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private static int hash(char[] chars, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + chars[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(char[] key, char[] chars, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Сравнение как у {@link String#compareTo(String)}
+     */
+    private static int compareChars(char[] a, char[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return a[i] - b[i];
+            }
+        }
+        return a.length - b.length;
+    }
+}
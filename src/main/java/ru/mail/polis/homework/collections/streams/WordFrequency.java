@@ -1,7 +1,26 @@
 package ru.mail.polis.homework.collections.streams;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ru.mail.polis.homework.collections.SpaceSaving;
 
 /**
  * Написать программу, которая из текста (стрим строк), возвращает 10 самых популярных слов (В порядке убывания частоты).
@@ -17,12 +36,156 @@ import java.util.stream.Stream;
  */
 public class WordFrequency {
 
+    private static final int TOP = 10;
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int BOUNDARY_BUFFER = 4096;
+
+    /**
+     * Разделители слов: все, что не буква и не цифра в смысле {@link Character#isLetterOrDigit(int)}
+     */
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{javaLetterOrDigit}]+");
+
+    private static final Comparator<Map.Entry<String, Long>> BY_FREQUENCY =
+            Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
     /**
      * Задачу можно решить без единого условного оператора, только с помощью стримов.
      */
     public static List<String> wordFrequency(Stream<String> lines) {
-        return null;
+        return lines.flatMap(SEPARATORS::splitAsStream)
+                .filter(word -> !word.isEmpty())
+                .map(word -> word.toLowerCase(Locale.ROOT))
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()))
+                .entrySet().stream()
+                .sorted(BY_FREQUENCY)
+                .limit(TOP)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * То же, что {@link #wordFrequency(Stream)}, но строки обрабатываются параллельно и без строки на каждое слово:
+     * у каждой части стрима свой {@link WordCounts}, который ищет слово в хеш-таблице прямо по символам
+     * и выделяет память только под новые слова. Части сливаются, а 10 слов выбираются кучей, без сортировки
+     * всего словаря.
+     *
+     * Регистр приводится посимвольно ({@link Character#toLowerCase(int)}), поэтому слова с контекстными
+     * правилами {@link String#toLowerCase(Locale)} (конечная греческая сигма, турецкая I с точкой)
+     * могут посчитаться иначе, чем в {@link #wordFrequency(Stream)}.
+     */
+    public static List<String> wordFrequencyParallel(Stream<String> lines) {
+        return lines.parallel()
+                .collect(Collector.of(WordCounts::new, WordCounts::addLine, WordCounts::merge,
+                        Collector.Characteristics.UNORDERED))
+                .top(TOP);
+    }
+
+    /**
+     * Приближенный вариант {@link #wordFrequency(Stream)} для неограниченного словаря: слова считаются
+     * алгоритмом {@link SpaceSaving} с фиксированным числом счетчиков counters, поэтому память не зависит
+     * от количества разных слов.
+     *
+     * Гарантии для текста из N слов:
+     * - каждое слово с частотой больше N / counters попадает в кандидаты;
+     * - частота слова оценивается сверху с ошибкой не больше N / counters, поэтому порядок слов, частоты которых
+     * отличаются меньше чем на N / counters, может не совпасть с точным.
+     * Кандидаты сортируются по оценке частоты, при равной оценке - лексикографически, как в точном варианте.
+     * Если разных слов не больше counters, результат точный.
+     */
+    public static List<String> wordFrequencyApproximate(Stream<String> lines, int counters) {
+        if (counters < TOP) {
+            throw new IllegalArgumentException("counters must be at least " + TOP + ": " + counters);
+        }
+        SpaceSaving<String> summary = new SpaceSaving<>(counters);
+        lines.flatMap(SEPARATORS::splitAsStream)
+                .filter(word -> !word.isEmpty())
+                .map(word -> word.toLowerCase(Locale.ROOT))
+                .forEachOrdered(summary::offer);
+        return StreamSupport.stream(Spliterators.spliterator(summary.ascendingIterator(), summary.size(),
+                Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                .sorted(Comparator.<String>comparingInt(summary::count).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(TOP)
+                .collect(Collectors.toList());
     }
 
+    /**
+     * То же, что {@link #wordFrequency(Stream)}, но для текста из файла в UTF-8 без разбиения на строки.
+     *
+     * Файл читается через отображение в память частями примерно по 16 МБ. Границы частей сдвигаются на ближайший
+     * ASCII-разделитель (пробел, знак препинания, перевод строки), поэтому ни слово, ни многобайтовый символ
+     * не разрезаются. Части обрабатываются параллельно в {@link java.util.concurrent.ForkJoinPool#commonPool()},
+     * байты разбираются на слова прямо из отображенной памяти (см. {@link WordCounts#addUtf8(ByteBuffer)}).
+     * Регистр приводится так же, как в {@link #wordFrequencyParallel(Stream)}.
+     */
+    public static List<String> wordFrequency(Path file) throws IOException {
+        return wordFrequency(file, CHUNK_SIZE);
+    }
+
+    static List<String> wordFrequency(Path file, int chunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Long> bounds = chunkBounds(channel, chunkSize);
+            List<Integer> chunks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.size(); i++) {
+                chunks.add(i);
+            }
+            return chunks.parallelStream()
+                    .map(i -> countChunk(channel, bounds.get(i), bounds.get(i + 1)))
+                    .reduce(WordCounts::merge)
+                    .orElseGet(WordCounts::new)
+                    .top(TOP);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Начала частей файла и его размер в конце
+     */
+    private static List<Long> chunkBounds(FileChannel channel, int chunkSize) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_BUFFER);
+        long position = chunkSize;
+        while (position < size) {
+            position = nextSeparator(channel, position, buffer);
+            if (position < size) {
+                bounds.add(position);
+            }
+            position += chunkSize;
+        }
+        bounds.add(size);
+        return bounds;
+    }
 
+    /**
+     * Позиция первого ASCII-разделителя не раньше position или размер файла, если разделителей больше нет
+     */
+    private static long nextSeparator(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b >= 0 && !Character.isLetterOrDigit(b)) {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+    }
+
+    private static WordCounts countChunk(FileChannel channel, long start, long end) {
+        WordCounts counts = new WordCounts();
+        try {
+            counts.addUtf8(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return counts;
+    }
 }
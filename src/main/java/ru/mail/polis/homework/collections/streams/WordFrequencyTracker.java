@@ -0,0 +1,134 @@
+package ru.mail.polis.homework.collections.streams;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Частоты слов в скользящем окне по непрерывному потоку строк: последние N строк или последние N минут.
+ * Слова и порядок выдачи такие же, как в {@link WordFrequency#wordFrequencyParallel(java.util.stream.Stream)}.
+ *
+ * Окно разбито на кольцо из buckets корзин, у каждой корзины свои счетчики слов, и есть общие счетчики всего окна.
+ * Строка считается в текущей корзине и в общих счетчиках. Когда корзина заполнилась (по строкам) или ее
+ * промежуток времени прошел, самая старая корзина вычитается из общих счетчиков и освобождается.
+ * Поэтому окно сдвигается шагом в одну корзину: в нем от (buckets - 1) / buckets окна до целого окна,
+ * а запрос top(k) - это выбор k слов из общих счетчиков, без обхода корзин.
+ *
+ * Все методы синхронизированы, трекер можно использовать из нескольких потоков.
+ */
+public class WordFrequencyTracker implements Consumer<String> {
+
+    private static final int TOP = 10;
+
+    private final WordCounts[] ring;
+    private final WordCounts window = new WordCounts();
+
+    /**
+     * Строк в корзине или 0, если окно по времени
+     */
+    private final long linesPerBucket;
+    private final long nanosPerBucket;
+    private final LongSupplier nanoClock;
+    private final long start;
+
+    /**
+     * Номер текущей корзины с начала работы, в кольце она лежит в ring[current % ring.length]
+     */
+    private long current;
+    private long linesInBucket;
+
+    private WordFrequencyTracker(int buckets, long linesPerBucket, long nanosPerBucket, LongSupplier nanoClock) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("buckets must be positive: " + buckets);
+        }
+        this.ring = new WordCounts[buckets];
+        for (int i = 0; i < buckets; i++) {
+            ring[i] = new WordCounts();
+        }
+        this.linesPerBucket = linesPerBucket;
+        this.nanosPerBucket = nanosPerBucket;
+        this.nanoClock = nanoClock;
+        this.start = nanoClock.getAsLong();
+    }
+
+    /**
+     * Окно из последних lines строк, которое сдвигается шагом в lines / buckets строк
+     */
+    public static WordFrequencyTracker lastLines(long lines, int buckets) {
+        if (lines < buckets) {
+            throw new IllegalArgumentException("Window must have at least one line per bucket: " + lines);
+        }
+        return new WordFrequencyTracker(buckets, lines / buckets, 0, System::nanoTime);
+    }
+
+    /**
+     * Окно за последний промежуток window, которое сдвигается шагом в window / buckets
+     */
+    public static WordFrequencyTracker lastPeriod(Duration window, int buckets) {
+        return lastPeriod(window, buckets, System::nanoTime);
+    }
+
+    static WordFrequencyTracker lastPeriod(Duration window, int buckets, LongSupplier nanoClock) {
+        long nanosPerBucket = window.toNanos() / Math.max(buckets, 1);
+        if (nanosPerBucket <= 0) {
+            throw new IllegalArgumentException("Window is too short: " + window);
+        }
+        return new WordFrequencyTracker(buckets, 0, nanosPerBucket, nanoClock);
+    }
+
+    /**
+     * Считает слова строки
+     */
+    @Override
+    public synchronized void accept(String line) {
+        if (linesPerBucket > 0) {
+            if (linesInBucket == linesPerBucket) {
+                advanceTo(current + 1);
+            }
+            linesInBucket++;
+        } else {
+            advanceTo(bucketAt(nanoClock.getAsLong()));
+        }
+        ring[(int) (current % ring.length)].addLine(line);
+        window.addLine(line);
+    }
+
+    /**
+     * 10 самых частых слов в окне
+     */
+    public List<String> top() {
+        return top(TOP);
+    }
+
+    /**
+     * До k самых частых слов в окне по убыванию частоты, при равной частоте - в лексикографическом порядке
+     */
+    public synchronized List<String> top(int k) {
+        if (linesPerBucket == 0) {
+            advanceTo(bucketAt(nanoClock.getAsLong()));
+        }
+        return window.top(k);
+    }
+
+    private long bucketAt(long nanos) {
+        return (nanos - start) / nanosPerBucket;
+    }
+
+    /**
+     * Сдвигает окно так, чтобы текущей стала корзина target, освобождая корзины, которые выпали из окна
+     */
+    private void advanceTo(long target) {
+        if (target <= current) {
+            return;
+        }
+        long expired = Math.min(target - current, ring.length);
+        for (long i = 1; i <= expired; i++) {
+            int slot = (int) ((current + i) % ring.length);
+            window.subtract(ring[slot]);
+            ring[slot] = new WordCounts();
+        }
+        current = target;
+        linesInBucket = 0;
+    }
+}
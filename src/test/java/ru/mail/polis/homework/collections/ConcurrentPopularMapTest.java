@@ -0,0 +1,85 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConcurrentPopularMapTest {
+
+    @Test
+    public void popularKey_operationCount() {
+        ConcurrentPopularMap<TestObject, TestObject> map = new ConcurrentPopularMap<>();
+        TestObject key = new TestObject("key");
+        TestObject value = new TestObject("value");
+        map.get(key);
+        map.remove(key);
+        map.put(key, value);
+        map.put(key, value);
+        map.get(key);
+        map.remove(key);
+        map.remove(key);
+        map.put(key, value);
+        map.remove(key);
+
+        assertEquals(key, map.getPopularKey());
+        assertEquals(9, map.getKeyPopularity(key));
+        assertEquals(value, map.getPopularValue());
+        assertEquals(7, map.getValuePopularity(value));
+    }
+
+    @Test
+    public void manyThreads() throws InterruptedException {
+        ConcurrentPopularMap<TestObject, TestObject> map = new ConcurrentPopularMap<>();
+        TestObject hot = new TestObject("hot");
+        int threads = 8;
+        int iterations = 10_000;
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            service.execute(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    map.get(hot);
+                    map.put(new TestObject("cold" + thread + "_" + i), hot);
+                }
+            });
+        }
+        service.shutdown();
+        service.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals(hot, map.getPopularKey());
+        assertEquals(threads * iterations, map.getKeyPopularity(hot));
+        assertEquals(threads * iterations, map.size());
+    }
+
+    @Test
+    public void leaderAfterConcurrentUpdates() throws InterruptedException {
+        ConcurrentPopularMap<TestObject, TestObject> map = new ConcurrentPopularMap<>();
+        int threads = 8;
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            service.execute(() -> {
+                // У каждого потока свой порядок ключей, но в сумме все ключи получают одинаково
+                for (int round = 0; round < 1000; round++) {
+                    for (int k = 0; k < threads; k++) {
+                        for (int j = 0; j <= k; j++) {
+                            map.get(new TestObject("key" + (k + thread) % threads));
+                        }
+                    }
+                }
+            });
+        }
+        service.shutdown();
+        service.awaitTermination(1, TimeUnit.MINUTES);
+
+        // Все ключи получили поровну обращений, поэтому лидером может быть любой из них
+        assertEquals(threads * 1000 * (threads + 1) / 2, map.getKeyPopularity(map.getPopularKey()));
+
+        map.get(new TestObject("key3"));
+        assertEquals(new TestObject("key3"), map.getPopularKey());
+    }
+}
@@ -0,0 +1,116 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LongPopularMapTest {
+
+    @Test
+    public void popularKey_operationCount() {
+        LongPopularMap<TestObject> map = new LongPopularMap<>();
+        long key = 42L;
+        TestObject value = new TestObject("value");
+        map.get(key);
+        map.remove(key);
+        map.put(key, value);
+        map.put(key, value);
+        map.get(key);
+        map.remove(key);
+        map.remove(key);
+        map.put(key, value);
+        map.remove(key);
+
+        assertEquals(key, map.getPopularKey());
+        assertEquals(9, map.getKeyPopularity(key));
+        assertEquals(value, map.getPopularValue());
+        assertEquals(7, map.getValuePopularity(value));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void manyKeys() {
+        LongPopularMap<TestObject> map = new LongPopularMap<>();
+        for (long i = 0; i < 10_000; i++) {
+            map.put(i * 1_000_003L, new TestObject("value" + i));
+        }
+        map.get(5 * 1_000_003L);
+        map.containsKey(-1L);
+
+        assertEquals(10_000, map.size());
+        assertEquals(5 * 1_000_003L, map.getPopularKey());
+        assertEquals(2, map.getKeyPopularity(5 * 1_000_003L));
+        assertEquals(1, map.getKeyPopularity(-1L));
+        assertEquals(0, map.getKeyPopularity(-2L));
+        assertEquals(new TestObject("value7"), map.get(7 * 1_000_003L));
+        assertNull(map.get(7L));
+        assertFalse(map.containsKey(-1L));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void popularKey_empty() {
+        new LongPopularMap<TestObject>().getPopularKey();
+    }
+
+    @Test
+    public void missesKeepCountWithoutSlots() {
+        LongPopularMap<TestObject> map = new LongPopularMap<>();
+        for (long i = 0; i < 100_000; i++) {
+            map.get(i);
+            map.containsKey(i);
+        }
+        map.remove(77L);
+        assertEquals(0, map.size());
+        assertEquals(77L, map.getPopularKey());
+        assertEquals(3, map.getKeyPopularity(77L));
+
+        // При первом put счетчик промахов переносится в таблицу ключей
+        for (long i = 0; i < 100_000; i += 2) {
+            map.put(i, new TestObject("value" + i));
+        }
+        assertEquals(3, map.getKeyPopularity(2L));
+        assertEquals(2, map.getKeyPopularity(3L));
+        assertEquals(3, map.getKeyPopularity(78L));
+        assertEquals(new TestObject("value4"), map.get(4L));
+        assertNull(map.get(5L));
+        assertEquals(3, map.getKeyPopularity(5L));
+    }
+
+    @Test
+    public void maxMissedKeys() {
+        LongPopularMap<TestObject> map = new LongPopularMap<>(16, 2);
+        map.get(1L);
+        map.get(2L);
+        map.get(3L);
+        map.get(3L);
+        assertEquals(1, map.getKeyPopularity(1L));
+        assertEquals(0, map.getKeyPopularity(3L));
+
+        map.put(1L, new TestObject("value"));
+        map.get(3L);
+        assertEquals(2, map.getKeyPopularity(1L));
+        assertEquals(1, map.getKeyPopularity(3L));
+    }
+
+    @Test
+    public void intKeys() {
+        IntPopularMap<TestObject> map = new IntPopularMap<>();
+        for (int i = -5_000; i < 5_000; i++) {
+            map.put(i, new TestObject("value" + i));
+        }
+        map.get(-17);
+        map.containsKey(Integer.MIN_VALUE);
+
+        assertEquals(10_000, map.size());
+        assertEquals(-17, map.getPopularKey());
+        assertEquals(2, map.getKeyPopularity(-17));
+        assertEquals(1, map.getKeyPopularity(Integer.MIN_VALUE));
+        assertEquals(new TestObject("value4999"), map.remove(4999));
+        assertEquals(9_999, map.size());
+    }
+}
@@ -0,0 +1,173 @@
+package ru.mail.polis.homework.collections;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PopularMapSnapshotTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("popular-map", ".snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        PopularMap<String, Long> map = new PopularMap<>();
+        map.put("a", 1L);
+        map.put("b", -300L);
+        map.put("c", 1L);
+        map.remove("c");
+        map.get("a");
+        map.get("missing");
+
+        PopularMapSnapshot.save(map, file, SnapshotCodec.STRING, SnapshotCodec.LONG);
+        PopularMap<String, Long> loaded = PopularMapSnapshot.load(file, SnapshotCodec.STRING, SnapshotCodec.LONG);
+
+        assertEquals(2, loaded.size());
+        assertEquals(map.getPopularKey(), loaded.getPopularKey());
+        assertEquals(2, loaded.getKeyPopularity("a"));
+        assertEquals(2, loaded.getKeyPopularity("c"));
+        assertEquals(1, loaded.getKeyPopularity("missing"));
+        assertEquals(Long.valueOf(1L), loaded.getPopularValue());
+        assertEquals(4, loaded.getValuePopularity(1L));
+
+        List<Long> expected = new ArrayList<>();
+        for (Iterator<Long> it = map.popularIterator(); it.hasNext(); ) {
+            expected.add(it.next());
+        }
+        List<Long> actual = new ArrayList<>();
+        for (Iterator<Long> it = loaded.popularIterator(); it.hasNext(); ) {
+            actual.add(it.next());
+        }
+        assertEquals(expected, actual);
+        assertEquals(Arrays.asList(-300L, 1L), actual);
+    }
+
+    @Test
+    public void manyEntries() throws IOException {
+        PopularMap<Integer, String> map = new PopularMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            map.put(i, "value" + (i % 100));
+        }
+        PopularMapSnapshot.save(map, file, SnapshotCodec.INTEGER, SnapshotCodec.STRING);
+        PopularMap<Integer, String> loaded = PopularMapSnapshot.load(file, SnapshotCodec.INTEGER,
+                SnapshotCodec.STRING);
+
+        assertEquals(100_000, loaded.size());
+        assertEquals(1000, loaded.getValuePopularity("value42"));
+        assertEquals("value42", loaded.get(99_942));
+    }
+
+    /**
+     * 100 000 разных значений популярности: поэлементный add при загрузке проходил бы по всем корзинам
+     * (O(n^2), минуты), дописывание в конец индекса укладывается в доли секунды
+     */
+    @Test(timeout = 10_000)
+    public void loadManyDistinctCounts() throws IOException {
+        int n = 100_000;
+        PopularityIndex<Integer> keyPopularity = new PopularityIndex<>();
+        Map<Integer, Integer> entries = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            keyPopularity.restore(i, i + 1);
+            entries.put(i, i);
+        }
+        PopularMap<Integer, Integer> map = new PopularMap<>(entries, keyPopularity, new PopularityIndex<>());
+        PopularMapSnapshot.save(map, file, SnapshotCodec.INTEGER, SnapshotCodec.INTEGER);
+
+        PopularMap<Integer, Integer> loaded = PopularMapSnapshot.load(file, SnapshotCodec.INTEGER,
+                SnapshotCodec.INTEGER);
+        assertEquals(Integer.valueOf(n - 1), loaded.getPopularKey());
+        assertEquals(n, loaded.getKeyPopularity(n - 1));
+        Iterator<Integer> it = loaded.keyPopularity().ascendingIterator();
+        for (int i = 0; i < n; i++) {
+            assertEquals(Integer.valueOf(i), it.next());
+        }
+    }
+
+    @Test
+    public void failedSaveKeepsPreviousSnapshot() throws IOException {
+        PopularMap<String, String> map = new PopularMap<>();
+        map.put("a", "first");
+        PopularMapSnapshot.save(map, file, SnapshotCodec.STRING, SnapshotCodec.STRING);
+        map.put("b", "broken");
+
+        SnapshotCodec<String> failing = new SnapshotCodec<String>() {
+            @Override
+            public void write(DataOutput out, String value) throws IOException {
+                if (value.equals("broken")) {
+                    throw new IOException("disk is full");
+                }
+                SnapshotCodec.STRING.write(out, value);
+            }
+
+            @Override
+            public String read(ByteBuffer in) {
+                return SnapshotCodec.STRING.read(in);
+            }
+        };
+        try {
+            PopularMapSnapshot.save(map, file, SnapshotCodec.STRING, failing);
+            fail("Save must fail");
+        } catch (IOException e) {
+            assertEquals("disk is full", e.getMessage());
+        }
+
+        PopularMap<String, String> loaded = PopularMapSnapshot.load(file, SnapshotCodec.STRING, SnapshotCodec.STRING);
+        assertEquals(1, loaded.size());
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(file.getParent(),
+                file.getFileName() + "*.tmp")) {
+            assertFalse(siblings.iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void corruptedCountsAreIOExceptions() throws IOException {
+        byte[] header = {0x50, 0x4D, 0x41, 0x50, 1};
+        // Количество пар больше остатка файла
+        assertCorrupted(header, new byte[]{(byte) 0xFF, (byte) 0xFF, 0x7F});
+        // varint длиннее 64 бит
+        byte[] longVarint = new byte[11];
+        Arrays.fill(longVarint, (byte) 0x80);
+        assertCorrupted(header, longVarint);
+        // Строка длиннее остатка файла
+        assertCorrupted(header, new byte[]{1, (byte) 0xFF, (byte) 0xFF, 0x7F, 0});
+    }
+
+    private void assertCorrupted(byte[] header, byte[] body) throws IOException {
+        byte[] bytes = Arrays.copyOf(header, header.length + body.length);
+        System.arraycopy(body, 0, bytes, header.length, body.length);
+        Files.write(file, bytes);
+        try {
+            PopularMapSnapshot.load(file, SnapshotCodec.STRING, SnapshotCodec.STRING);
+            fail("Corrupted snapshot must not load");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(file.toString()));
+        }
+    }
+}
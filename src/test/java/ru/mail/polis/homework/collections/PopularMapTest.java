@@ -1,9 +1,16 @@
 package ru.mail.polis.homework.collections;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -171,6 +178,116 @@ public class PopularMapTest {
         assertEquals(3, i);
     }
 
+    @Test(expected = ConcurrentModificationException.class)
+    public void popularIterator_modifiedDuringIteration() {
+        popularMap1.put(new TestObject("key1"), new TestObject("value1"));
+        popularMap1.put(new TestObject("key2"), new TestObject("value2"));
+
+        Iterator<TestObject> it = popularMap1.popularIterator();
+        it.next();
+        popularMap1.get(new TestObject("key1"));
+        it.next();
+    }
+
+    @Test
+    public void decay_recentKeyBecomesPopular() {
+        long[] now = {0};
+        PopularMap<TestObject, TestObject> decaying = PopularMap.withDecay(new HashMap<>(), Duration.ofSeconds(1),
+                () -> now[0]);
+        TestObject old = new TestObject("old");
+        TestObject fresh = new TestObject("fresh");
+        TestObject value = new TestObject("value");
+        for (int i = 0; i < 8; i++) {
+            decaying.put(old, value);
+        }
+        assertEquals(old, decaying.getPopularKey());
+        assertEquals(8, decaying.getKeyPopularity(old));
+
+        now[0] = TimeUnit.SECONDS.toNanos(3);
+        assertEquals(1, decaying.getKeyPopularity(old));
+        decaying.get(fresh);
+        decaying.get(fresh);
+        assertEquals(fresh, decaying.getPopularKey());
+        assertEquals(2, decaying.getKeyPopularity(fresh));
+    }
+
+    @Test
+    public void approximate_popularKey() {
+        PopularMap<TestObject, TestObject> approximate = PopularMap.approximate(0.01, 0.01, 8);
+        TestObject hot = new TestObject("hot");
+        TestObject value = new TestObject("value");
+        for (int i = 0; i < 1000; i++) {
+            approximate.get(hot);
+            approximate.put(new TestObject("key" + i), value);
+        }
+        assertEquals(hot, approximate.getPopularKey());
+        assertEquals(value, approximate.getPopularValue());
+        assertTrue(approximate.getKeyPopularity(hot) >= 1000);
+        assertTrue(approximate.getKeyPopularity(hot) <= 1000 + 0.01 * 2000);
+        assertEquals(1000, approximate.size());
+    }
+
+    @Test
+    public void views_countPopularity() {
+        TestObject key1 = new TestObject("key1");
+        TestObject key2 = new TestObject("key2");
+        TestObject value1 = new TestObject("value1");
+        TestObject value2 = new TestObject("value2");
+        popularMap1.put(key1, value1);
+        popularMap1.put(key2, value2);
+
+        assertSame(popularMap1.keySet(), popularMap1.keySet());
+        for (TestObject key : popularMap1.keySet()) {
+            assertTrue(key.getStr().startsWith("key"));
+        }
+        assertEquals(2, popularMap1.getKeyPopularity(key1));
+
+        for (Map.Entry<TestObject, TestObject> entry : popularMap1.entrySet()) {
+            if (entry.getKey().equals(key2)) {
+                entry.setValue(value1);
+            }
+        }
+        assertEquals(4, popularMap1.getKeyPopularity(key2));
+        assertEquals(3, popularMap1.getValuePopularity(value1));
+        assertEquals(value1, popularMap1.get(key2));
+
+        for (Iterator<TestObject> it = popularMap1.values().iterator(); it.hasNext(); ) {
+            it.next();
+            it.remove();
+        }
+        assertTrue(popularMap1.isEmpty());
+        assertEquals(value1, popularMap1.getPopularValue());
+        assertEquals(8, popularMap1.getValuePopularity(value1));
+    }
+
+    @Test
+    public void putAll_getAll_countLikeSingleOperations() {
+        TestObject key1 = new TestObject("key1");
+        TestObject key2 = new TestObject("key2");
+        TestObject key3 = new TestObject("key3");
+        TestObject value1 = new TestObject("value1");
+        TestObject value2 = new TestObject("value2");
+        popularMap1.put(key1, value1);
+
+        Map<TestObject, TestObject> batch = new HashMap<>();
+        batch.put(key1, value2);
+        batch.put(key2, value2);
+        popularMap1.putAll(batch);
+
+        assertEquals(2, popularMap1.getKeyPopularity(key1));
+        assertEquals(1, popularMap1.getKeyPopularity(key2));
+        assertEquals(2, popularMap1.getValuePopularity(value1));
+        assertEquals(2, popularMap1.getValuePopularity(value2));
+
+        Map<TestObject, TestObject> found = popularMap1.getAll(Arrays.asList(key1, key2, key2, key3));
+        assertEquals(2, found.size());
+        assertEquals(value2, found.get(key2));
+        assertEquals(3, popularMap1.getKeyPopularity(key2));
+        assertEquals(1, popularMap1.getKeyPopularity(key3));
+        assertEquals(5, popularMap1.getValuePopularity(value2));
+        assertEquals(value2, popularMap1.getPopularValue());
+    }
+
     @Test
     public void isEmpty() {
         popularMap2.isEmpty();
@@ -243,4 +360,54 @@ public class PopularMapTest {
         popularMap2.entrySet();
         verify(map, times(1)).entrySet();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void views_bulkOperationsCountLikeRemove() {
+        for (int i = 0; i < 5; i++) {
+            popularMap1.put(new TestObject("k" + i), new TestObject("v" + i));
+        }
+
+        assertTrue(popularMap1.values().remove(new TestObject("v3")));
+        assertEquals(4, popularMap1.size());
+        assertEquals(2, popularMap1.getKeyPopularity(new TestObject("k3")));
+        assertEquals(2, popularMap1.getValuePopularity(new TestObject("v3")));
+        assertEquals(1, popularMap1.getValuePopularity(new TestObject("v0")));
+        assertFalse(popularMap1.values().remove(new TestObject("missing")));
+        assertEquals(0, popularMap1.getValuePopularity(new TestObject("missing")));
+
+        assertTrue(popularMap1.values().removeAll(Arrays.asList(new TestObject("v4"))));
+        assertEquals(2, popularMap1.getKeyPopularity(new TestObject("k4")));
+        assertEquals(2, popularMap1.getValuePopularity(new TestObject("v4")));
+
+        assertTrue(popularMap1.keySet().retainAll(Arrays.asList(new TestObject("k0"), new TestObject("k1"))));
+        assertEquals(1, popularMap1.getKeyPopularity(new TestObject("k0")));
+        assertEquals(2, popularMap1.getKeyPopularity(new TestObject("k2")));
+        assertEquals(2, popularMap1.getValuePopularity(new TestObject("v2")));
+
+        assertTrue(popularMap1.keySet().removeAll(Arrays.asList(new TestObject("k1"), new TestObject("nothing"))));
+        assertEquals(2, popularMap1.getKeyPopularity(new TestObject("k1")));
+        assertEquals(1, popularMap1.getKeyPopularity(new TestObject("nothing")));
+
+        // Сравнение и печать представлений популярность не меняют
+        Set<TestObject> expected = new HashSet<>(Arrays.asList(new TestObject("k0")));
+        assertTrue(popularMap1.keySet().equals(expected));
+        assertEquals(expected.hashCode(), popularMap1.keySet().hashCode());
+        assertEquals("[v0]", popularMap1.values().toString());
+        assertEquals("[k0=v0]", popularMap1.entrySet().toString());
+        assertEquals(1, popularMap1.getKeyPopularity(new TestObject("k0")));
+        assertEquals(1, popularMap1.getValuePopularity(new TestObject("v0")));
+    }
+
+    @Test
+    public void putAll_appliesDeltasInSourceOrder() {
+        Map<TestObject, TestObject> batch = new LinkedHashMap<>();
+        for (String name : new String[]{"zeta", "alpha", "mu", "beta", "omega"}) {
+            batch.put(new TestObject("key-" + name), new TestObject("value-" + name));
+        }
+        popularMap1.putAll(batch);
+
+        // Как и при поэлементных put, среди равных первым идет тот, кто раньше набрал популярность
+        assertEquals(new TestObject("key-zeta"), popularMap1.getPopularKey());
+        assertEquals(new TestObject("value-zeta"), popularMap1.getPopularValue());
+    }
+}
@@ -0,0 +1,55 @@
+package ru.mail.polis.homework.collections;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpaceSavingTest {
+
+    @Test
+    public void exactWhileUnderCapacity() {
+        SpaceSaving<String> spaceSaving = new SpaceSaving<>(3);
+        for (String element : new String[]{"a", "b", "a", "c", "a", "b"}) {
+            spaceSaving.offer(element);
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), spaceSaving.top(3));
+        assertEquals(3, spaceSaving.count("a"));
+        assertEquals(0, spaceSaving.error("a"));
+    }
+
+    @Test
+    public void heavyHitterSurvivesEviction() {
+        SpaceSaving<String> spaceSaving = new SpaceSaving<>(4);
+        int total = 0;
+        for (int i = 0; i < 1000; i++) {
+            spaceSaving.offer("hot");
+            spaceSaving.offer("cold" + i);
+            total += 2;
+        }
+        assertEquals("hot", spaceSaving.getMostFrequent());
+        assertEquals(4, spaceSaving.size());
+        int count = spaceSaving.count("hot");
+        assertTrue(count >= 1000);
+        assertTrue(count - 1000 <= total / spaceSaving.capacity());
+        assertTrue(count - spaceSaving.error("hot") <= 1000);
+    }
+
+    @Test
+    public void countMinDepthFollowsDelta() {
+        CountMinSketch<Integer> sketch = new CountMinSketch<>(0.01, 1e-9);
+        assertEquals(21, sketch.depth());
+        int total = 0;
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add(i % 500, 1);
+            total++;
+        }
+        for (int i = 0; i < 500; i++) {
+            int estimate = sketch.estimate(i);
+            assertTrue(estimate >= 20);
+            assertTrue(estimate - 20 <= 0.01 * total);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MailLogTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("mail-log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void recoverAfterRestart() throws IOException {
+        List<Mail<?>> mails = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            mails.add(new MailMessage("user" + (i % 10), "sender" + (i % 3), "Сообщение " + i));
+            mails.add(new Salary("user" + (i % 10), "boss", i));
+        }
+        try (MailLog log = new MailLog(directory, 64 * 1024)) {
+            MailService<Mail<?>> service = new MailService<>(new HeapMailBoxStorage<>(), log);
+            MailService.process(service, mails);
+        }
+
+        try (MailLog log = new MailLog(directory, 64 * 1024)) {
+            MailService<Mail<?>> recovered = MailService.recover(log, new HeapMailBoxStorage<>());
+            assertEquals(10, recovered.getMailBox().size());
+            assertEquals(1000, recovered.getMailBox().get("user4").size());
+            assertEquals("boss", recovered.getPopularSender());
+            assertEquals(5000, recovered.getSenderCount("boss"));
+
+            recovered.accept(new Salary("user4", "boss", 1));
+        }
+
+        try (MailLog log = new MailLog(directory)) {
+            assertEquals(10_001, log.replay(mail -> {
+            }));
+        }
+    }
+
+    @Test
+    public void batchesThroughPipeline() throws IOException, InterruptedException {
+        try (MailLog log = new MailLog(directory, 64 * 1024)) {
+            MailService<Salary> service = new MailService<>(new HeapMailBoxStorage<>(), log);
+            Iterator<Salary> salaries = IntStream.range(0, 10_000)
+                    .mapToObj(i -> new Salary("worker" + (i % 10), "boss", i))
+                    .iterator();
+            MailService.process(service, salaries, 256, 64, 2);
+        }
+
+        try (MailLog log = new MailLog(directory)) {
+            MailService<Mail<?>> recovered = MailService.recover(log, new HeapMailBoxStorage<>());
+            assertEquals(1000, recovered.getMailBox().get("worker7").size());
+            assertEquals(10_000, recovered.getSenderCount("boss"));
+        }
+    }
+
+    @Test
+    public void reopenKeepsWritingToLastSegment() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            try (MailLog log = new MailLog(directory)) {
+                log.append(new Salary("user", "boss", i));
+            }
+        }
+        assertEquals(1, segmentFiles().size());
+        try (MailLog log = new MailLog(directory)) {
+            assertEquals(3, log.replay(mail -> {
+            }));
+        }
+    }
+
+    @Test
+    public void tornTailIsCutOff() throws IOException {
+        try (MailLog log = new MailLog(directory)) {
+            log.append(new MailMessage("bob", "alice", "first"));
+            log.append(new MailMessage("bob", "alice", "second"));
+        }
+        Path segment = segmentFiles().get(0);
+        long length = Files.size(segment);
+        // Прерванная запись: заголовок обещает 100 байт тела, а записано только 3
+        Files.write(segment, new byte[]{0, 0, 0, 100, 1, 2, 3, 4, 5, 6, 7}, StandardOpenOption.APPEND);
+
+        List<Mail<?>> replayed = new ArrayList<>();
+        try (MailLog log = new MailLog(directory)) {
+            assertEquals(length, Files.size(segment));
+            log.replay(replayed::add);
+            log.append(new MailMessage("bob", "alice", "third"));
+        }
+        try (MailLog log = new MailLog(directory)) {
+            assertEquals(3, log.replay(replayed::add));
+        }
+        assertEquals(new MailMessage("bob", "alice", "third"), replayed.get(4));
+    }
+
+    @Test
+    public void corruptionBeforeTailIsAnError() throws IOException {
+        try (MailLog log = new MailLog(directory, 256)) {
+            for (int i = 0; i < 100; i++) {
+                log.append(new MailMessage("bob", "alice", "message " + i));
+            }
+        }
+        List<Path> segments = segmentFiles();
+        assertTrue(segments.size() > 2);
+        byte[] bytes = Files.readAllBytes(segments.get(0));
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(segments.get(0), bytes);
+
+        try (MailLog log = new MailLog(directory, 256)) {
+            log.replay(mail -> {
+            });
+            fail("Corruption in the middle of the log must not be skipped");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(segments.get(0).getFileName().toString()));
+        }
+    }
+
+    @Test
+    public void corruptedLengthInLastSegmentIsAnError() throws IOException {
+        long second;
+        try (MailLog log = new MailLog(directory)) {
+            log.append(new MailMessage("bob", "alice", "first"));
+            second = Files.size(segmentFiles().get(0));
+            log.append(new MailMessage("bob", "alice", "second"));
+            log.append(new MailMessage("bob", "alice", "third"));
+        }
+        Path segment = segmentFiles().get(0);
+        long length = Files.size(segment);
+        // Длина второй записи теперь указывает за конец файла, но за ней есть целая третья запись
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[(int) second + 2] = 0x7F;
+        Files.write(segment, bytes);
+
+        try (MailLog log = new MailLog(directory)) {
+            fail("Corrupted length must not cut off acknowledged records");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Corrupted record at offset " + second));
+        }
+        assertEquals(length, Files.size(segment));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(result::add);
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
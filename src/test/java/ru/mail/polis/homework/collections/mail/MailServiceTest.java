@@ -0,0 +1,324 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MailServiceTest {
+
+    @Test
+    public void mailBox() {
+        MailService<Mail<?>> service = new MailService<>();
+        MailMessage message = new MailMessage("bob", "alice", "hello");
+        Salary salary = new Salary("bob", "boss", 100);
+        MailService.process(service, Arrays.asList(message, salary, new MailMessage("eve", "alice", "hi")));
+
+        Map<String, List<Mail<?>>> mailBox = service.getMailBox();
+        assertEquals(2, mailBox.size());
+        assertEquals(2, mailBox.get("bob").size());
+        assertTrue(mailBox.get("bob").contains(message));
+        assertTrue(mailBox.get("bob").contains(salary));
+    }
+
+    @Test
+    public void processInParallel() {
+        MailService<Salary> service = new MailService<>();
+        List<Salary> salaries = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            salaries.add(new Salary("worker" + (i % 100), "boss", i));
+        }
+        MailService.process(service, salaries);
+
+        Map<String, List<Salary>> mailBox = service.getMailBox();
+        assertEquals(100, mailBox.size());
+        assertEquals(1000, mailBox.get("worker7").size());
+    }
+
+    @Test
+    public void popularSenderAndRecipient() {
+        MailService<MailMessage> service = new MailService<>();
+        service.accept(new MailMessage("bob", "alice", "1"));
+        service.accept(new MailMessage("eve", "alice", "2"));
+        service.accept(new MailMessage("eve", "carol", "3"));
+        service.accept(new MailMessage("eve", "dave", "4"));
+
+        assertEquals("alice", service.getPopularSender());
+        assertEquals("eve", service.getPopularRecipient());
+        assertEquals(2, service.getSenderCount("alice"));
+        assertEquals(3, service.getRecipientCount("eve"));
+    }
+
+    @Test
+    public void popularRecipient_manyThreads() {
+        MailService<Salary> service = new MailService<>();
+        List<Salary> salaries = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            salaries.add(new Salary(i % 3 == 0 ? "rich" : "worker" + i, "boss" + (i % 10), i));
+        }
+        MailService.process(service, salaries);
+
+        assertEquals("rich", service.getPopularRecipient());
+        assertEquals(33_334, service.getRecipientCount("rich"));
+        assertEquals(10_000, service.getSenderCount("boss3"));
+    }
+
+    @Test
+    public void offHeapStorage() {
+        OffHeapMailBoxStorage<Mail<?>> storage = new OffHeapMailBoxStorage<>();
+        MailService<Mail<?>> service = new MailService<>(storage);
+        List<Mail<?>> mails = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            mails.add(new MailMessage("user" + (i % 10), "sender" + (i % 7), "Привет, " + i));
+            mails.add(new Salary("user" + (i % 10), "boss", i));
+        }
+        MailService.process(service, mails);
+
+        Map<String, List<Mail<?>>> mailBox = service.getMailBox();
+        assertEquals(10, mailBox.size());
+        assertEquals(2000, mailBox.get("user3").size());
+        assertTrue(mailBox.get("user3").contains(new MailMessage("user3", "sender6", "Привет, 13")));
+        assertTrue(mailBox.get("user3").contains(new Salary("user3", "boss", 9993)));
+        assertEquals(20_000, storage.size());
+        assertEquals("boss", service.getPopularSender());
+    }
+
+    @Test
+    public void offHeapMessagesReadWhileWriting() throws InterruptedException {
+        OffHeapMailBoxStorage<MailMessage> storage = new OffHeapMailBoxStorage<>();
+        MailService<MailMessage> service = new MailService<>(storage);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 50_000; i++) {
+                service.accept(new MailMessage("user" + (i % 10), "sender" + i, "Письмо " + i));
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            for (List<MailMessage> messages : service.getMailBox().values()) {
+                if (!messages.isEmpty()) {
+                    MailMessage last = messages.get(messages.size() - 1);
+                    assertEquals("Письмо " + last.getSender().substring("sender".length()), last.getText());
+                }
+            }
+        }
+        writer.join();
+
+        List<MailMessage> user3 = service.getMailBox().get("user3");
+        assertEquals(5000, user3.size());
+        assertEquals(new MailMessage("user3", "sender49993", "Письмо 49993"), user3.get(4999));
+    }
+
+    @Test
+    public void processThroughPipeline() throws InterruptedException {
+        MailService<Salary> service = new MailService<>();
+        Iterator<Salary> salaries = IntStream.range(0, 100_000)
+                .mapToObj(i -> new Salary("worker" + (i % 100), "boss", i))
+                .iterator();
+        MailPipeline.Metrics metrics = MailService.process(service, salaries, 64, 16, 4);
+
+        assertEquals(100_000, metrics.getProcessed());
+        assertEquals(0, metrics.getQueueDepth());
+        assertTrue(metrics.getMaxQueueDepth() <= 64);
+        assertEquals(1000, service.getMailBox().get("worker42").size());
+    }
+
+    @Test(timeout = 10_000)
+    public void pipelineFailure() throws InterruptedException {
+        IllegalStateException error = new IllegalStateException("disk is full");
+        MailService<Salary> service = new MailService<>(new HeapMailBoxStorage<Salary>() {
+            @Override
+            public void add(Salary mail) {
+                if (mail.getAmount() == 500) {
+                    throw error;
+                }
+                super.add(mail);
+            }
+        });
+        Iterator<Salary> salaries = IntStream.range(0, 100_000)
+                .mapToObj(i -> new Salary("worker" + (i % 100), "boss", i))
+                .iterator();
+        try {
+            MailService.process(service, salaries, 64, 16, 4);
+            fail("Pipeline must rethrow the failure");
+        } catch (CompletionException e) {
+            assertSame(error, e.getCause());
+        }
+        assertTrue(salaries.hasNext());
+    }
+
+    @Test
+    public void salaryStats() {
+        MailService<Mail<?>> service = new MailService<>();
+        service.accept(new Salary("bob", "boss", 100));
+        service.accept(new Salary("bob", "boss", 300));
+        service.accept(new Salary("eve", "boss", 350));
+        service.accept(new Salary("carol", "hr", 50));
+        service.accept(new MailMessage("carol", "hr", "bonus soon"));
+
+        SalaryStats bob = service.getRecipientSalaryStats("bob");
+        assertEquals(400, bob.getSum());
+        assertEquals(2, bob.getCount());
+        assertEquals(300, bob.getMax());
+        assertEquals(750, service.getSenderSalaryStats("boss").getSum());
+        assertEquals(0, service.getRecipientSalaryStats("nobody").getCount());
+        assertEquals(Arrays.asList("bob", "eve"), service.getRichestRecipients(2));
+        assertEquals(Arrays.asList("bob", "eve", "carol"), service.getRichestRecipients(10));
+    }
+
+    @Test
+    public void retention() {
+        AtomicLong clock = new AtomicLong();
+        RetentionPolicy policy = RetentionPolicy.UNLIMITED
+                .withMaxPerRecipient(3)
+                .withMaxAge(Duration.ofSeconds(10))
+                .withMaxTotal(5);
+        HeapMailBoxStorage<Mail<?>> storage = new HeapMailBoxStorage<>(policy, clock::get);
+        MailService<Mail<?>> service = new MailService<>(storage);
+
+        for (int i = 0; i < 5; i++) {
+            service.accept(new MailMessage("bob", "alice", "hello " + i));
+        }
+        assertEquals(Arrays.asList(new MailMessage("bob", "alice", "hello 2"),
+                new MailMessage("bob", "alice", "hello 3"),
+                new MailMessage("bob", "alice", "hello 4")), service.getMailBox().get("bob"));
+
+        service.accept(new MailMessage("eve", "alice", "hi"));
+        service.accept(new MailMessage("carol", "alice", "hi"));
+        service.accept(new MailMessage("bob", "alice", "hello 5"));
+        service.accept(new MailMessage("dave", "alice", "hi"));
+        // eve дольше всех ничего не получала, ее ящик удален целиком
+        Map<String, List<Mail<?>>> mailBox = service.getMailBox();
+        assertFalse(mailBox.containsKey("eve"));
+        assertEquals(3, mailBox.get("bob").size());
+        assertEquals(5, storage.size());
+
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+        service.accept(new MailMessage("eve", "alice", "again"));
+        mailBox = service.getMailBox();
+        assertEquals(1, mailBox.size());
+        assertEquals(1, storage.size());
+
+        // Счетчики не зависят от удаления писем
+        assertEquals("alice", service.getPopularSender());
+        assertEquals("bob", service.getPopularRecipient());
+        assertEquals(6, service.getRecipientCount("bob"));
+    }
+
+    @Test
+    public void retentionUnderConcurrentWrites() throws InterruptedException {
+        AtomicLong clock = new AtomicLong();
+        RetentionPolicy policy = RetentionPolicy.UNLIMITED
+                .withMaxPerRecipient(10)
+                .withMaxAge(Duration.ofSeconds(1))
+                .withMaxTotal(100);
+        HeapMailBoxStorage<Salary> storage = new HeapMailBoxStorage<>(policy, clock::get);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    storage.add(new Salary(i % 3 == 0 ? "hot" : "user" + (i % 50), "boss", i));
+                    if (i % 1000 == 0) {
+                        clock.addAndGet(Duration.ofMillis(300).toNanos());
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        while (writers.get(0).isAlive()) {
+            storage.getMailBox();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Map<String, List<Salary>> mailBox = storage.getMailBox();
+        assertEquals(10, mailBox.get("hot").size());
+        assertEquals(storage.size(), mailBox.values().stream().mapToInt(List::size).sum());
+        assertTrue(storage.size() <= 100);
+
+        // Все письма устарели: ящики удаляются, а не остаются пустыми
+        clock.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertTrue(storage.getMailBox().isEmpty());
+        assertEquals(0, storage.size());
+        storage.add(new Salary("hot", "boss", 1));
+        assertEquals(1, storage.getMailBox().get("hot").size());
+    }
+
+    @Test
+    public void search() {
+        MailService<Mail<?>> service = new MailService<>(HeapMailBoxStorage.searchable());
+        MailMessage first = new MailMessage("bob", "alice", "Hello, Bob! Lunch today?");
+        MailMessage second = new MailMessage("eve", "alice", "lunch is cancelled");
+        MailMessage third = new MailMessage("bob", "carol", "hello again, hello");
+        service.accept(first);
+        service.accept(new Salary("bob", "boss", 100));
+        service.accept(second);
+        service.accept(third);
+
+        assertEquals(Arrays.asList(first, third), service.searchAll("hello").collect(Collectors.toList()));
+        assertEquals(Arrays.asList(first), service.searchAll("LUNCH", "hello").collect(Collectors.toList()));
+        assertEquals(Arrays.asList(first, second, third),
+                service.searchAny("lunch", "again", "missing").collect(Collectors.toList()));
+        assertEquals(0, service.searchAll("hello", "missing").count());
+        assertEquals(0, service.searchAll("boss").count());
+        // Слова запроса разбиваются так же, как тексты писем
+        assertEquals(Arrays.asList(first), service.searchAll("bob/lunch").collect(Collectors.toList()));
+        assertEquals(Arrays.asList(first, third),
+                service.searchAny("hello-again", "today!").collect(Collectors.toList()));
+        assertEquals(0, service.searchAll("!?").count());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void searchIsOptIn() {
+        MailService<MailMessage> service = new MailService<>();
+        service.accept(new MailMessage("bob", "alice", "hello"));
+        service.searchAll("hello");
+    }
+
+    @Test
+    public void searchForgetsEvictedMessages() {
+        RetentionPolicy policy = RetentionPolicy.UNLIMITED.withMaxPerRecipient(10);
+        MailService<MailMessage> service = new MailService<>(HeapMailBoxStorage.searchable(policy));
+        for (int i = 0; i < 100_000; i++) {
+            service.accept(new MailMessage("user" + (i % 10), "sender", "number " + i + (i % 7 == 0 ? " seven" : "")));
+        }
+
+        // В ящиках остались последние 100 писем, из них 14 с "seven"
+        assertEquals(14, service.searchAll("seven").count());
+        assertEquals(Arrays.asList("number 99999"), service.searchAny("99999", "5")
+                .map(MailMessage::getText).collect(Collectors.toList()));
+        assertEquals(100, service.searchAny("number").count());
+    }
+
+    @Test
+    public void searchManyMessages() {
+        MailService<MailMessage> service = new MailService<>(HeapMailBoxStorage.searchable());
+        List<MailMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            messages.add(new MailMessage("user" + (i % 10), "sender", "number " + i + (i % 7 == 0 ? " seven" : "")
+                    + (i % 1000 == 0 ? " thousand" : "")));
+        }
+        MailService.process(service, messages);
+
+        assertEquals(14_286, service.searchAny("seven").count());
+        assertEquals(15, service.searchAll("thousand", "seven").count());
+        assertEquals(14_286 + 100 - 15, service.searchAny("seven", "thousand").count());
+        assertEquals(Arrays.asList("number 7000 seven thousand"), service.searchAll("thousand", "7000", "seven")
+                .map(MailMessage::getText).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,78 @@
+package ru.mail.polis.homework.collections.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ShardedMailServiceTest {
+
+    @Test
+    public void mergesShards() {
+        List<Mail<?>> mails = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            mails.add(new MailMessage("user" + (i % 50), "sender" + (i % 7 == 0 ? 0 : i % 13), "text" + i));
+        }
+        mails.add(new Salary("user1", "boss", 500));
+        mails.add(new Salary("user2", "boss", 700));
+        mails.add(new Salary("user1", "boss", 300));
+
+        MailService<Mail<?>> single = new MailService<>();
+        mails.forEach(single);
+        try (ShardedMailService<Mail<?>> sharded = new ShardedMailService<>(4)) {
+            ShardedMailService.process(sharded, mails);
+
+            assertEquals(single.getPopularSender(), sharded.getPopularSender());
+            assertEquals(single.getPopularRecipient(), sharded.getPopularRecipient());
+            assertEquals(single.getMailBox().size(), sharded.getMailBox().size());
+            assertEquals(single.getMailBox().get("user7"), sharded.getMailBox().get("user7"));
+            assertEquals(800, sharded.getRecipientSalaryStats("user1").getSum());
+            assertEquals(1500, sharded.getSenderSalaryStats("boss").getSum());
+            assertEquals(700, sharded.getSenderSalaryStats("boss").getMax());
+            assertEquals(Arrays.asList("user1", "user2"), sharded.getRichestRecipients(5));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void smallQueuesAndFailure() {
+        IllegalStateException error = new IllegalStateException("storage is broken");
+        List<Salary> salaries = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            salaries.add(new Salary("worker" + (i % 100), "boss", i));
+        }
+        try (ShardedMailService<Salary> sharded = new ShardedMailService<>(4, 1, HeapMailBoxStorage::new)) {
+            ShardedMailService.process(sharded, salaries);
+            assertEquals(100, sharded.getMailBox().size());
+            assertEquals(10_000, sharded.getSenderSalaryStats("boss").getCount());
+        }
+
+        ShardedMailService<Salary> failing = new ShardedMailService<>(4, 1, () -> new HeapMailBoxStorage<Salary>() {
+            @Override
+            public void add(Salary mail) {
+                if (mail.getAmount() == 500) {
+                    throw error;
+                }
+                super.add(mail);
+            }
+        });
+        try {
+            ShardedMailService.process(failing, salaries);
+            fail("Failure must be rethrown");
+        } catch (CompletionException e) {
+            assertSame(error, e.getCause());
+        }
+        assertSame(error, failing.getFailure());
+        try {
+            failing.close();
+            fail("close must rethrow the failure");
+        } catch (CompletionException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+}
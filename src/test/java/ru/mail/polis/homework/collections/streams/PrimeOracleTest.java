@@ -0,0 +1,64 @@
+package ru.mail.polis.homework.collections.streams;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrimeOracleTest {
+
+    @Test
+    public void streamIsPrime() {
+        assertFalse(SimpleStreams.isPrime(-7));
+        assertFalse(SimpleStreams.isPrime(0));
+        assertFalse(SimpleStreams.isPrime(1));
+        assertTrue(SimpleStreams.isPrime(2));
+        assertTrue(SimpleStreams.isPrime(3));
+        assertFalse(SimpleStreams.isPrime(49));
+        assertTrue(SimpleStreams.isPrime(Integer.MAX_VALUE));
+        assertEquals(25, IntStream.range(0, 100).filter(SimpleStreams::isPrime).count());
+    }
+
+    @Test
+    public void sieveAndMillerRabinAgreeWithTrialDivision() {
+        // Маленькое решето, чтобы большая часть чисел проверялась Миллером-Рабином
+        PrimeOracle oracle = new PrimeOracle(1000);
+        for (int n = -10; n < 200_000; n++) {
+            assertEquals("n = " + n, SimpleStreams.isPrime(n), oracle.isPrime(n));
+        }
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            int n = random.nextInt(Integer.MAX_VALUE);
+            assertEquals("n = " + n, SimpleStreams.isPrime(n), oracle.isPrime(n));
+        }
+        // Сильные псевдопростые по отдельным основаниям
+        assertFalse(oracle.isPrime(2047));
+        assertFalse(oracle.isPrime(1373653));
+        assertFalse(oracle.isPrime(25326001));
+        assertTrue(oracle.isPrime(2147483629));
+    }
+
+    @Test
+    public void segmentedSieve() {
+        PrimeOracle oracle = new PrimeOracle(3_000_000);
+        for (int n = 0; n <= 3_000_000; n += 3) {
+            assertEquals("n = " + n, SimpleStreams.isPrime(n), oracle.isPrime(n));
+        }
+        assertEquals(216_816, IntStream.rangeClosed(0, 3_000_000).filter(oracle::isPrime).count());
+    }
+
+    @Test
+    public void bulk() {
+        int[] numbers = {0, 1, 2, 17, 18, 7919, 16_777_259, 2_147_483_647, -5, 1_000_000_007};
+        boolean[] expected = new boolean[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            expected[i] = SimpleStreams.isPrime(numbers[i]);
+        }
+        assertArrayEquals(expected, SimpleStreams.isPrime(numbers));
+    }
+}
@@ -2,8 +2,14 @@ package ru.mail.polis.homework.collections.streams;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
@@ -40,4 +46,74 @@ public class WordFrequencyTest {
         List<String> actual = WordFrequency.wordFrequency(innerStream);
         assertEquals(expected, actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void parallel() {
+        String[] lines = {
+                "Lorem ipsum dolor sit amet, consectetur adipiscing elit. Sed sodales consectetur purus at faucibus.",
+                "Шел я шел,а потом еще шел,и наконец,дошел", "Мама мыла мыла мыла раму!", "", "!!! ,,,"};
+        assertEquals(WordFrequency.wordFrequency(Arrays.stream(lines)),
+                WordFrequency.wordFrequencyParallel(Arrays.stream(lines)));
+    }
+
+    @Test
+    public void parallelLargeText() {
+        String[] vocabulary = new String[500];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = (i % 2 == 0 ? "Word" : "слово") + i % 37 + "x" + i / 37;
+        }
+        Random random = new Random(7);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder line = new StringBuilder();
+            for (int j = 0; j < 12; j++) {
+                int index = (int) Math.min(vocabulary.length - 1, Math.abs(random.nextGaussian()) * 60);
+                line.append(vocabulary[index]).append(j % 3 == 0 ? ", " : " ");
+            }
+            lines.add(line.toString());
+        }
+        assertEquals(WordFrequency.wordFrequency(lines.stream()), WordFrequency.wordFrequencyParallel(lines.stream()));
+    }
+
+    @Test
+    public void file() throws IOException {
+        List<String> lines = Arrays.asList(
+                "Lorem ipsum dolor sit amet, consectetur adipiscing elit. Sed sodales consectetur purus at faucibus.",
+                "Шел я шел,а потом еще шел,и наконец,дошел",
+                "Мама мыла мыла мыла раму! Ёлка ёлка ЁЛКА 𝐀𝐁 𝐀𝐁",
+                "Donec mi quam, tempor vel ipsum non, faucibus suscipit massa.");
+        Path file = Files.createTempFile("words", ".txt");
+        try {
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            List<String> expected = WordFrequency.wordFrequency(lines.stream());
+            assertEquals(expected, WordFrequency.wordFrequency(file));
+            assertEquals(expected, WordFrequency.wordFrequency(file, 1));
+            assertEquals(expected, WordFrequency.wordFrequency(file, 7));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void approximate() {
+        String[] lines = {
+                "Lorem ipsum dolor sit amet, consectetur adipiscing elit. Sed sodales consectetur purus at faucibus.",
+                "Шел я шел,а потом еще шел,и наконец,дошел", "Мама мыла мыла мыла раму!"};
+        // Разных слов меньше, чем счетчиков, поэтому результат точный
+        assertEquals(WordFrequency.wordFrequency(Arrays.stream(lines)),
+                WordFrequency.wordFrequencyApproximate(Arrays.stream(lines), 100));
+    }
+
+    @Test
+    public void approximateUnboundedVocabulary() {
+        Random random = new Random(11);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            // 20 частых слов с заметно разной частотой и случайный "мусор", которого намного больше счетчиков
+            int frequent = (int) Math.min(19, Math.abs(random.nextGaussian()) * 6);
+            lines.add("Top" + frequent + " noise" + random.nextInt(1_000_000) + " id" + random.nextLong());
+        }
+        assertEquals(WordFrequency.wordFrequency(lines.stream()),
+                WordFrequency.wordFrequencyApproximate(lines.stream(), 200));
+    }
+}
@@ -0,0 +1,58 @@
+package ru.mail.polis.homework.collections.streams;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class WordFrequencyTrackerTest {
+
+    @Test
+    public void lastLines() {
+        WordFrequencyTracker tracker = WordFrequencyTracker.lastLines(4, 2);
+        tracker.accept("Мама мыла раму");
+        tracker.accept("мама");
+        assertEquals(Arrays.asList("мама", "мыла", "раму"), tracker.top());
+
+        tracker.accept("рама, рама");
+        tracker.accept("рама");
+        assertEquals(Arrays.asList("рама", "мама", "мыла", "раму"), tracker.top());
+        assertEquals(Collections.singletonList("рама"), tracker.top(1));
+
+        // Первая корзина (две первых строки) выпадает из окна
+        tracker.accept("мыла");
+        assertEquals(Arrays.asList("рама", "мыла"), tracker.top());
+    }
+
+    @Test
+    public void lastPeriod() {
+        AtomicLong clock = new AtomicLong();
+        WordFrequencyTracker tracker = WordFrequencyTracker.lastPeriod(Duration.ofMinutes(10), 10, clock::get);
+        tracker.accept("alpha beta");
+        clock.addAndGet(Duration.ofMinutes(5).toNanos());
+        tracker.accept("beta gamma");
+        assertEquals(Arrays.asList("beta", "alpha", "gamma"), tracker.top());
+
+        clock.addAndGet(Duration.ofMinutes(5).toNanos());
+        assertEquals(Arrays.asList("beta", "gamma"), tracker.top());
+
+        clock.addAndGet(Duration.ofHours(1).toNanos());
+        assertEquals(Collections.emptyList(), tracker.top());
+        tracker.accept("delta");
+        assertEquals(Collections.singletonList("delta"), tracker.top());
+    }
+
+    @Test
+    public void longFeed() {
+        WordFrequencyTracker tracker = WordFrequencyTracker.lastLines(1000, 10);
+        for (int i = 0; i < 100_000; i++) {
+            tracker.accept("word" + i + " common word" + i % 7);
+        }
+        assertEquals(Arrays.asList("common", "word0", "word1", "word2", "word3", "word4", "word6", "word5",
+                "word99000", "word99001"), tracker.top());
+    }
+}